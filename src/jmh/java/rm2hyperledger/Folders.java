@@ -0,0 +1,46 @@
+package rm2hyperledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Resets the folders that the benchmarks convert.
+ */
+class Folders {
+	static void delete(Path folder) throws IOException {
+		if (Files.exists(folder) == false)
+			return;
+
+		try (Stream<Path> files = Files.walk(folder)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> {
+				try {
+					Files.delete(file);
+				}
+				catch (IOException exception) {
+					throw new UncheckedIOException(exception);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Replace the target folder with a copy of the source folder.
+	 */
+	static void copy(Path source, Path target) throws IOException {
+		delete(target);
+		try (Stream<Path> files = Files.walk(source)) {
+			files.forEach(file -> {
+				try {
+					Files.copy(file, target.resolve(source.relativize(file)));
+				}
+				catch (IOException exception) {
+					throw new UncheckedIOException(exception);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package rm2hyperledger;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to fix the line endings of a tree of source files, with {@link FileHelper#fixLineEnding(Path)} and with the
+ * regular expression that it replaces.
+ * <p>
+ * The files are written again before each iteration, with the line separator of the system ("system"), with one
+ * that is converted ("other"), or half with each. Each iteration converts the whole tree once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LineEndingBenchmark {
+	@Param({"10000"})
+	public int files;
+
+	@Param({"system", "other", "mixed"})
+	public String endings;
+
+	private Path folder;
+	private final List<Path> paths = new ArrayList<>();
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		folder = Files.createTempDirectory("LineEndingBenchmark");
+		for (int i = 0; i < files; i++) {
+			Path package_ = folder.resolve("p" + i / 100);
+			Files.createDirectories(package_);
+			paths.add(package_.resolve("C" + i + ".java"));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void writeFiles() throws IOException {
+		// "\r\n" is kept, so the other separator is "\r" on Linux.
+		String other = LineEndings.SYSTEM.equals("\n") ? "\r" : "\n";
+		for (int i = 0; i < paths.size(); i++) {
+			String separator;
+			if (endings.equals("system"))
+				separator = LineEndings.SYSTEM;
+			else if (endings.equals("other"))
+				separator = other;
+			else
+				separator = i % 2 == 0 ? LineEndings.SYSTEM : other;
+			Files.write(paths.get(i), getSource(i, separator).getBytes(StandardCharsets.UTF_8));
+		}
+		ParsedSourceCache.clear();
+	}
+
+	private static String getSource(int i, String separator) {
+		StringBuilder source = new StringBuilder();
+		source.append("package p;").append(separator).append(separator);
+		source.append("public class C").append(i).append(" {").append(separator);
+		for (int m = 0; m < 20; m++) {
+			source.append("\tpublic int get").append(m).append("() {").append(separator);
+			source.append("\t\treturn ").append(m).append(";").append(separator);
+			source.append("\t}").append(separator).append(separator);
+		}
+		source.append("}").append(separator);
+		return source.toString();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Folders.delete(folder);
+	}
+
+	@Benchmark
+	public int streaming() throws IOException {
+		int changed = 0;
+		for (Path file : paths) {
+			if (FileHelper.fixLineEnding(file))
+				changed++;
+		}
+		return changed;
+	}
+
+	@Benchmark
+	public int regex() throws IOException {
+		for (Path file : paths) {
+			String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			content = content.replaceAll("((?<!\\r)\\n|\\r(?!\\n))", System.getProperty("line.separator"));
+			Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		}
+		return paths.size();
+	}
+}
@@ -0,0 +1,97 @@
+package rm2hyperledger;
+
+import org.openjdk.jmh.annotations.*;
+import rm2hyperledger.vcs.VcsBackend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Throughput of each operation of {@link Program} on a synthetic project, without git.
+ * <p>
+ * The input of the operation is the output of the operations before it, taken during a full conversion. The parsed
+ * source cache is cleared before each invocation, so the operation lexes and parses all files it reads.
+ * <p>
+ * Run with {@code gradle jmh}. The {@code gc} profiler reports the allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperationBenchmark {
+	@Param({"EntityManagerSaveStates", "EntityManagerRandomMethods", "EntityManagerStubGetterSetter",
+			"ContractAddTransactionWrapper", "TransactionReturnListToArray", "AddGensonToContract", "ConvertEntities",
+			"MarkGensonConverters", "EntityManagerGetObjectByPK", "AddEntityGetPK", "EntityChangeEntityReferenceToPK",
+			"SaveModified", "ConvertContractFields"})
+	public String operation;
+
+	@Param({"20"})
+	public int entities;
+
+	@Param({"5"})
+	public int services;
+
+	@Param({"10"})
+	public int methodsPerService;
+
+	private Path folder;
+	private Path input;
+	private VcsBackend vcs;
+	private GitCommit captured;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+
+		folder = Files.createTempDirectory("OperationBenchmark");
+		input = Files.createTempDirectory("OperationBenchmarkInput");
+		new SyntheticProject(entities, services, methodsPerService).write(folder);
+		vcs = VcsBackend.create("none", folder.toString());
+
+		Program.beforeOperation = operation -> {
+			if (captured == null && operation.getClass().getSimpleName().equals(this.operation)) {
+				captured = operation;
+				try {
+					Folders.copy(folder, input);
+				}
+				catch (IOException exception) {
+					throw new UncheckedIOException(exception);
+				}
+			}
+		};
+		try {
+			Program.convert(folder.toString(), SyntheticProject.getReModelFile(folder).toString(), vcs, new GeneratorOptions(), null);
+		}
+		finally {
+			Program.beforeOperation = operation -> {
+			};
+		}
+
+		if (captured == null)
+			throw new IllegalArgumentException("Program doesn't run operation " + operation);
+	}
+
+	@Setup(Level.Invocation)
+	public void restore() throws IOException {
+		Folders.copy(input, folder);
+		ParsedSourceCache.clear();
+		RunReport.clear();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Folders.delete(folder);
+		Folders.delete(input);
+	}
+
+	@Benchmark
+	public void run() {
+		captured.editCommit(vcs);
+	}
+}
@@ -0,0 +1,72 @@
+package rm2hyperledger;
+
+import org.openjdk.jmh.annotations.*;
+import rm2hyperledger.vcs.VcsBackend;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Throughput of a full conversion of a synthetic project, without git and without copying the project skeleton.
+ * <p>
+ * Run with {@code gradle jmh}. The {@code gc} profiler reports the allocation per conversion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PipelineBenchmark {
+	@Param({"10", "50"})
+	public int entities;
+
+	@Param({"5"})
+	public int services;
+
+	@Param({"10"})
+	public int methodsPerService;
+
+	/**
+	 * Options of {@link Program} that choose how the operations run.
+	 */
+	@Param({"", "--fused", "--in-memory", "--fused --in-memory"})
+	public String flags;
+
+	private Path folder;
+	private Path input;
+	private VcsBackend vcs;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+
+		folder = Files.createTempDirectory("PipelineBenchmark");
+		input = Files.createTempDirectory("PipelineBenchmarkInput");
+		new SyntheticProject(entities, services, methodsPerService).write(input);
+		vcs = VcsBackend.create("none", folder.toString());
+	}
+
+	@Setup(Level.Invocation)
+	public void restore() throws IOException {
+		Folders.copy(input, folder);
+		ParsedSourceCache.clear();
+		RunReport.clear();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Folders.delete(folder);
+		Folders.delete(input);
+	}
+
+	@Benchmark
+	public Set<String> convert() throws IOException {
+		return Program.convert(folder.toString(), SyntheticProject.getReModelFile(folder).toString(), vcs, new GeneratorOptions(), null, List.of(flags.split(" ")));
+	}
+}
@@ -0,0 +1,101 @@
+package rm2hyperledger;
+
+import org.openjdk.jmh.annotations.*;
+import rm2hyperledger.vcs.VcsBackend;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Time to convert a batch of synthetic projects of different sizes with each VCS backend. The difference between
+ * the backends is the time that a backend saves on the batch.
+ * <p>
+ * Each project is a git repository with its source committed, as a project is before a conversion. The project
+ * skeleton is not copied.
+ * <p>
+ * Run with {@code gradle jmh}. git must be on the path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class VcsBackendBenchmark {
+	@Param({"shell", "none", "squash"})
+	public String backend;
+
+	/**
+	 * Number of projects in the batch. Project i has 10 * (i + 1) entities.
+	 */
+	@Param({"4"})
+	public int projects;
+
+	private final List<Path> folders = new ArrayList<>();
+	private final List<Path> inputs = new ArrayList<>();
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, InterruptedException {
+		Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+
+		for (int i = 0; i < projects; i++) {
+			Path input = Files.createTempDirectory("VcsBackendBenchmarkInput");
+			new SyntheticProject(10 * (i + 1), 5, 10).write(input);
+			git(input, "init", "-q");
+			git(input, "config", "user.name", "VcsBackendBenchmark");
+			git(input, "config", "user.email", "VcsBackendBenchmark@localhost");
+			git(input, "add", "-A");
+			git(input, "commit", "-q", "-m", "Source");
+			inputs.add(input);
+			folders.add(Files.createTempDirectory("VcsBackendBenchmark"));
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void restore() throws IOException {
+		for (int i = 0; i < projects; i++)
+			Folders.copy(inputs.get(i), folders.get(i));
+		ParsedSourceCache.clear();
+		RunReport.clear();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		for (Path folder : Stream.concat(folders.stream(), inputs.stream()).toArray(Path[]::new))
+			Folders.delete(folder);
+	}
+
+	/**
+	 * @return git processes run for the batch
+	 */
+	@Benchmark
+	public int convertBatch() throws IOException, InterruptedException {
+		int processes = 0;
+		for (Path folder : folders) {
+			VcsBackend vcs = VcsBackend.create(backend, folder.toString());
+			Program.convert(folder.toString(), SyntheticProject.getReModelFile(folder).toString(), vcs, new GeneratorOptions(), null);
+			vcs.finish();
+			processes += vcs.getProcessCount();
+		}
+		return processes;
+	}
+
+	private static void git(Path folder, String... arguments) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>(List.of("git"));
+		command.addAll(List.of(arguments));
+		int exitCode = new ProcessBuilder(command)
+				.directory(folder.toFile())
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+				.redirectError(ProcessBuilder.Redirect.DISCARD)
+				.start()
+				.waitFor();
+		if (exitCode != 0)
+			throw new IOException("git " + arguments[0] + " exited with " + exitCode);
+	}
+}
@@ -0,0 +1,222 @@
+package rm2hyperledger;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts the projects listed in a manifest in one JVM, several at the same time.
+ * <p>
+ * Each line of a manifest has the target folder, the REModel file and the options of one conversion, quoted if they
+ * contain spaces, as the lines read by the daemon. Empty lines and lines starting with # are skipped. The options
+ * of the command line apply to all conversions. {@code --projects} sets how many projects are converted at the same
+ * time, by default the number of processors.
+ * <p>
+ * Each conversion keeps its state in its own {@link Program}, so that only the parse caches and the DFA caches of
+ * the lexer and parser are shared. After a batch, the time and throughput of each project and of the whole batch
+ * are printed.
+ */
+public class Batch {
+	private static final Logger logger = Logger.getLogger(Batch.class.getSimpleName());
+
+	private static final String MANIFEST_EXTENSION = ".manifest";
+
+	private final List<String> argsList;
+	private int projects = Runtime.getRuntime().availableProcessors();
+
+	public Batch(List<String> argsList) {
+		this.argsList = argsList;
+		try {
+			int i = argsList.indexOf("--projects");
+			if (i > -1 && i + 1 < argsList.size())
+				projects = Math.max(1, Integer.parseInt(argsList.get(i + 1)));
+		}
+		catch (NumberFormatException exception) {
+			logger.warning("--projects must be followed by a number. Use " + projects + ".");
+		}
+	}
+
+	/**
+	 * Convert the projects of the manifest and print the results.
+	 */
+	public List<Result> run(Path manifest) throws IOException, InterruptedException {
+		List<Callable<Result>> conversions = new ArrayList<>();
+		for (String line : Files.readAllLines(manifest)) {
+			List<String> words = Program.splitArguments(line);
+			if (words.isEmpty() || words.get(0).startsWith("#"))
+				continue;
+			if (words.size() < 2) {
+				logger.warning("Expected a target folder and a REModel file, got: " + line);
+				continue;
+			}
+
+			List<String> projectArgs = new ArrayList<>(words.subList(2, words.size()));
+			projectArgs.addAll(argsList);
+			conversions.add(() -> convert(words.get(0), words.get(1), projectArgs));
+		}
+		if (conversions.isEmpty()) {
+			logger.warning("No project to convert in " + manifest);
+			return List.of();
+		}
+
+		logger.info(String.format("Converting %d projects of %s, %d at a time.", conversions.size(), manifest, projects));
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(projects, conversions.size()));
+		List<Result> results = new ArrayList<>();
+		try {
+			for (Future<Result> future : executor.invokeAll(conversions))
+				results.add(future.get());
+		}
+		catch (ExecutionException exception) {
+			// convert catches the failures of a conversion.
+			throw new IllegalStateException(exception.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		printSummary(System.out, results, System.nanoTime() - start);
+		return results;
+	}
+
+	/**
+	 * Convert the projects of every manifest ({@code *.manifest}) created in the folder, until the JVM is stopped.
+	 * Manifests already in the folder are converted first. Write a manifest elsewhere and move it into the folder,
+	 * so that it isn't read before it is complete.
+	 */
+	public void watch(Path folder) throws IOException, InterruptedException {
+		try (WatchService watcher = folder.getFileSystem().newWatchService()) {
+			folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+
+			List<Path> existing;
+			try (Stream<Path> files = Files.list(folder)) {
+				existing = files.filter(Batch::isManifest).sorted().collect(Collectors.toList());
+			}
+			for (Path manifest : existing)
+				run(manifest);
+
+			logger.info("Waiting for manifests in " + folder);
+			while (true) {
+				WatchKey key = watcher.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+						continue;
+
+					Path manifest = folder.resolve((Path) event.context());
+					if (isManifest(manifest))
+						run(manifest);
+				}
+				if (key.reset() == false) {
+					logger.warning(folder + " can no longer be watched.");
+					return;
+				}
+			}
+		}
+	}
+
+	private static boolean isManifest(Path file) {
+		return file.getFileName().toString().endsWith(MANIFEST_EXTENSION) && Files.isRegularFile(file);
+	}
+
+	private static Result convert(String targetFolder, String reModelFile, List<String> argsList) {
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			Program.convertProject(targetFolder, reModelFile, argsList);
+			succeeded = true;
+		}
+		catch (Exception exception) {
+			logger.severe(String.format("Unable to convert %s: %s", targetFolder, exception));
+		}
+		long elapsed = System.nanoTime() - start;
+
+		long files = 0;
+		long bytes = 0;
+		Path sources = Path.of(targetFolder, "src", "main", "java");
+		if (Files.isDirectory(sources)) {
+			try (Stream<Path> walk = Files.walk(sources)) {
+				for (Path file : (Iterable<Path>) walk.filter(f -> f.toString().endsWith(".java"))::iterator) {
+					files++;
+					bytes += Files.size(file);
+				}
+			}
+			catch (IOException exception) {
+				logger.warning(String.format("Unable to count the sources of %s: %s", targetFolder, exception.getMessage()));
+			}
+		}
+		return new Result(targetFolder, succeeded, elapsed, files, bytes);
+	}
+
+	/**
+	 * Print each project, then the whole batch. Throughput is in converted source files and kilobytes per second.
+	 */
+	static void printSummary(PrintStream out, List<Result> results, long elapsedNanos) {
+		out.printf("%-6s %10s %7s %9s %9s  %s%n", "Status", "Time s", "Files", "Files/s", "KB/s", "Project");
+		for (Result result : results) {
+			double seconds = result.getNanos() / 1e9;
+			out.printf("%-6s %10.2f %7d %9.1f %9.1f  %s%n", result.isSucceeded() ? "ok" : "failed", seconds,
+					result.getFiles(), result.getFiles() / seconds, result.getBytes() / 1024.0 / seconds, result.getTargetFolder());
+		}
+
+		double seconds = elapsedNanos / 1e9;
+		long failed = results.stream().filter(r -> r.isSucceeded() == false).count();
+		long files = results.stream().mapToLong(Result::getFiles).sum();
+		long bytes = results.stream().mapToLong(Result::getBytes).sum();
+		long projectNanos = results.stream().mapToLong(Result::getNanos).sum();
+		out.printf("%-6s %10.2f %7d %9.1f %9.1f  %d projects, %d failed, %.1f projects/min, %.2f projects at a time%n",
+				"Total", seconds, files, files / seconds, bytes / 1024.0 / seconds, results.size(), failed,
+				results.size() * 60 / seconds, projectNanos / (double) elapsedNanos);
+	}
+
+	/**
+	 * The conversion of one project of a batch.
+	 */
+	public static class Result {
+		private final String targetFolder;
+		private final boolean succeeded;
+		private final long nanos;
+		private final long files;
+		private final long bytes;
+
+		Result(String targetFolder, boolean succeeded, long nanos, long files, long bytes) {
+			this.targetFolder = targetFolder;
+			this.succeeded = succeeded;
+			this.nanos = nanos;
+			this.files = files;
+			this.bytes = bytes;
+		}
+
+		public String getTargetFolder() {
+			return targetFolder;
+		}
+
+		public boolean isSucceeded() {
+			return succeeded;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return number of Java files in the converted project
+		 */
+		public long getFiles() {
+			return files;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+	}
+}
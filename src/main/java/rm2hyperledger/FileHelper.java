@@ -1,10 +1,18 @@
 package rm2hyperledger;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class FileHelper {
+	/**
+	 * Reused by {@link #fixLineEnding(Path)}, which reads every file of the project.
+	 */
+	private static final ThreadLocal<ByteBuffer> lineEndingBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(64 * 1024));
+
 	public static String getFileNameWithoutExtension(String fileName) {
 		int pos = fileName.lastIndexOf(".");
 		if (pos > 0) {
@@ -13,15 +21,94 @@ public class FileHelper {
 		return fileName;
 	}
 
+	/**
+	 * Read a source file, from its {@link Workspace} if one is open.
+	 */
+	public static String readSource(Path file) throws IOException {
+		Workspace workspace = Workspace.find(file);
+		if (workspace != null)
+			return workspace.read(file);
+		return readFile(file);
+	}
+
+	static String readFile(Path file) throws IOException {
+		// CharStreams.fromPath also decodes as UTF-8 and replaces malformed input.
+		byte[] bytes = Files.readAllBytes(file);
+		OperationProfile.countRead(bytes.length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write the source back to the file, or to its {@link Workspace} if one is open, and drop its stale parse from
+	 * {@link ParsedSourceCache}.
+	 */
+	public static void writeSource(Path file, String content) throws IOException {
+		Workspace workspace = Workspace.find(file);
+		if (workspace != null && workspace.write(file, content)) {
+			ParsedSourceCache.invalidate(file);
+			return;
+		}
+
+		long start = System.nanoTime();
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		Files.write(file, bytes);
+		OperationProfile.countWrite(bytes.length, System.nanoTime() - start);
+		ParsedSourceCache.invalidate(file);
+	}
+
+	/**
+	 * @return the real path of an existing file, otherwise the normalized absolute path.
+	 */
+	public static Path getRealPath(Path file) {
+		try {
+			return file.toRealPath();
+		}
+		catch (IOException exception) {
+			return file.toAbsolutePath().normalize();
+		}
+	}
+
+	/**
+	 * @return the content with the line separator of the system, or the same instance if nothing changes.
+	 */
+	static String fixLineEnding(String content) {
+		return LineEndings.normalize(content, LineEndings.SYSTEM);
+	}
+
+	/**
+	 * Convert the line endings of the file to the line separator of the system, and write it only if they change.
+	 *
+	 * @return true if the file is changed.
+	 */
+	static boolean fixLineEnding(Path file) throws IOException {
+		ByteBuffer content;
+		try (FileChannel channel = FileChannel.open(file)) {
+			content = lineEndingBuffer.get();
+			if (content.capacity() < channel.size()) {
+				content = ByteBuffer.allocate((int) channel.size());
+				lineEndingBuffer.set(content);
+			}
+			content.clear();
+			while (content.hasRemaining()) {
+				if (channel.read(content) < 0)
+					break;
+			}
+			content.flip();
+		}
+		OperationProfile.countRead(content.limit());
+
+		ByteBuffer fixed = LineEndings.normalize(content, LineEndings.SYSTEM);
+		if (fixed == content)
+			return false;
+
+		Files.write(file, fixed.array());
+		// Timed as line-ending fixing, not as writing.
+		OperationProfile.countWrite(fixed.limit(), 0);
+		ParsedSourceCache.invalidate(file);
+		return true;
+	}
+
 	static String getFileLineEnding(Path fileName) throws IOException {
-		String content = Files.readString(fileName);
-		if (content.contains("\r\n"))
-			return "\r\n";
-		else if (content.contains("\n"))
-			return "\n";
-		else if (content.contains("\r"))
-			return "\r";
-		else
-			return System.getProperty("line.separator");
+		return LineEndings.detect(fileName);
 	}
 }
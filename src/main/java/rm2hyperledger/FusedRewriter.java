@@ -0,0 +1,234 @@
+package rm2hyperledger;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.TokenStreamRewriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies the edits of several steps to one token stream, so that a file edited by several steps is lexed and
+ * parsed only once.
+ * <p>
+ * Each step records its edits with its own {@link Step}, and the steps are applied in order. The text is the same
+ * as if each step parsed the output of the previous one:
+ * <ul>
+ * <li>insertBefore goes after the text that earlier steps inserted at the same place, insertAfter before it;</li>
+ * <li>a replacement also replaces the text that earlier steps inserted inside the range;</li>
+ * <li>an import added by {@link ImportsCollector} goes after the imports that earlier steps added, and is skipped
+ * if they already import it.</li>
+ * </ul>
+ * A step must not edit tokens that an earlier step replaced, since they would not exist after parsing again.
+ */
+public class FusedRewriter {
+	private static final Pattern importDeclaration = Pattern.compile("import\\s+(?:static\\s+)?([\\w.]+(?:\\.\\*)?)\\s*;");
+
+	private final TokenStream tokens;
+
+	/**
+	 * Text of each token, "" for the tokens of a replaced range except the first, which has the replacement.
+	 */
+	private final String[] texts;
+	private final boolean[] replaced;
+
+	/**
+	 * Text inserted before each token, and after the last one, in order.
+	 */
+	private final List<List<String>> gaps = new ArrayList<>();
+
+	public FusedRewriter(TokenStream tokens) {
+		this.tokens = tokens;
+		texts = new String[tokens.size()];
+		replaced = new boolean[tokens.size()];
+		for (int i = 0; i < texts.length; i++) {
+			Token token = tokens.get(i);
+			texts[i] = token.getType() == Token.EOF ? "" : token.getText();
+		}
+		for (int i = 0; i <= texts.length; i++)
+			gaps.add(new ArrayList<>());
+	}
+
+	/**
+	 * @return a rewriter for the edits of the next step, to be passed to {@link #apply(Step)}
+	 */
+	public Step newStep() {
+		return new Step(tokens);
+	}
+
+	public void apply(Step step) {
+		for (Edit edit : step.edits) {
+			for (int i = edit.from; i <= edit.to; i++) {
+				if (replaced[i])
+					throw new IllegalStateException(String.format("Token %d (%s) was replaced by an earlier step.", i, tokens.get(i).getText()));
+			}
+		}
+
+		// TokenStreamRewriter puts insertBefore texts in the reverse order and insertAfter texts in order.
+		Map<Integer, List<String>> front = new HashMap<>();
+		Map<Integer, List<String>> back = new HashMap<>();
+		for (Edit edit : step.edits) {
+			if (edit.kind == Edit.Kind.BEFORE)
+				back.computeIfAbsent(edit.from, g -> new ArrayList<>()).add(0, edit.text);
+			else if (edit.kind == Edit.Kind.AFTER)
+				front.computeIfAbsent(edit.from + 1, g -> new ArrayList<>()).add(edit.text);
+		}
+
+		for (Edit edit : step.edits) {
+			if (edit.kind != Edit.Kind.REPLACE)
+				continue;
+
+			texts[edit.from] = edit.text;
+			replaced[edit.from] = true;
+			for (int i = edit.from + 1; i <= edit.to; i++) {
+				texts[i] = "";
+				replaced[i] = true;
+				gaps.get(i).clear();
+				front.remove(i);
+				back.remove(i);
+			}
+		}
+
+		// Imports that earlier steps added, as ImportsCollector would find them after parsing.
+		Map<Integer, Set<String>> earlierImports = new HashMap<>();
+		for (Edit edit : step.edits) {
+			if (edit.kind == Edit.Kind.IMPORT)
+				earlierImports.computeIfAbsent(edit.from, this::getInsertedImports);
+		}
+
+		front.forEach((gap, inserted) -> gaps.get(gap).addAll(0, inserted));
+		back.forEach((gap, inserted) -> gaps.get(gap).addAll(inserted));
+
+		for (Edit edit : step.edits) {
+			if (edit.kind != Edit.Kind.IMPORT)
+				continue;
+
+			Set<String> imported = earlierImports.get(edit.from);
+			String covering = edit.text.endsWith(".*") ? edit.text : edit.text.substring(0, edit.text.lastIndexOf('.')) + ".*";
+			if (imported.contains(covering) == false)
+				insertImport(edit.from, "\nimport " + edit.text + ";");
+		}
+	}
+
+	/**
+	 * @return the imports that earlier steps inserted after the import point and before the next token on the
+	 * default channel, which is where the imports end.
+	 */
+	private Set<String> getInsertedImports(int importPoint) {
+		Set<String> imports = new HashSet<>();
+		for (int gap = importPoint + 1; gap <= getNextDefaultToken(importPoint); gap++) {
+			for (String text : gaps.get(gap)) {
+				Matcher matcher = importDeclaration.matcher(text);
+				while (matcher.find())
+					imports.add(matcher.group(1));
+			}
+		}
+		return imports;
+	}
+
+	/**
+	 * Insert after the last import declaration inserted after the import point, or after the import point.
+	 */
+	private void insertImport(int importPoint, String text) {
+		for (int gap = getNextDefaultToken(importPoint); gap > importPoint; gap--) {
+			List<String> inserted = gaps.get(gap);
+			for (int i = inserted.size() - 1; i >= 0; i--) {
+				Matcher matcher = importDeclaration.matcher(inserted.get(i));
+				int end = -1;
+				while (matcher.find())
+					end = matcher.end();
+				if (end > -1) {
+					inserted.set(i, inserted.get(i).substring(0, end) + text + inserted.get(i).substring(end));
+					return;
+				}
+			}
+		}
+		gaps.get(importPoint + 1).add(0, text);
+	}
+
+	private int getNextDefaultToken(int index) {
+		int next = index + 1;
+		while (next < texts.length - 1 && tokens.get(next).getChannel() != Token.DEFAULT_CHANNEL)
+			next++;
+		return next;
+	}
+
+	public String getText() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < texts.length; i++) {
+			for (String inserted : gaps.get(i))
+				text.append(inserted);
+			text.append(texts[i]);
+		}
+		for (String inserted : gaps.get(texts.length))
+			text.append(inserted);
+		return text.toString();
+	}
+
+	/**
+	 * Records the edits of one step. Its own {@link #getText()} has only the edits of this step.
+	 */
+	public static class Step extends TokenStreamRewriter {
+		private final List<Edit> edits = new ArrayList<>();
+
+		private Step(TokenStream tokens) {
+			super(tokens);
+		}
+
+		@Override
+		public void insertBefore(String programName, int index, Object text) {
+			super.insertBefore(programName, index, text);
+			edits.add(new Edit(Edit.Kind.BEFORE, index, index, String.valueOf(text)));
+		}
+
+		@Override
+		public void insertAfter(String programName, int index, Object text) {
+			super.insertAfter(programName, index, text);
+			edits.add(new Edit(Edit.Kind.AFTER, index, index, String.valueOf(text)));
+		}
+
+		@Override
+		public void replace(String programName, int from, int to, Object text) {
+			super.replace(programName, from, to, text);
+			edits.add(new Edit(Edit.Kind.REPLACE, from, to, text == null ? "" : text.toString()));
+		}
+
+		/**
+		 * Import a type or package after the import point, see {@link ImportsCollector}.
+		 */
+		void insertImport(Token importPoint, String newImport) {
+			super.insertAfter(DEFAULT_PROGRAM_NAME, importPoint.getTokenIndex(), "\nimport " + newImport + ";");
+			edits.add(new Edit(Edit.Kind.IMPORT, importPoint.getTokenIndex(), importPoint.getTokenIndex(), newImport));
+		}
+	}
+
+	private static class Edit {
+		enum Kind {
+			BEFORE,
+			AFTER,
+			REPLACE,
+			/**
+			 * Text is the name to import.
+			 */
+			IMPORT,
+		}
+
+		final Kind kind;
+		final int from;
+		final int to;
+		final String text;
+
+		Edit(Kind kind, int from, int to, String text) {
+			this.kind = kind;
+			this.from = from;
+			this.to = to;
+			this.text = text;
+		}
+	}
+}
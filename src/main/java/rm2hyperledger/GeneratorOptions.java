@@ -0,0 +1,45 @@
+package rm2hyperledger;
+
+/**
+ * Choices about the code generated into the target project.
+ */
+public class GeneratorOptions {
+	public enum StorageLayout {
+		/**
+		 * All instances of an entity type are stored as one JSON array under the type name.
+		 */
+		TABLE,
+		/**
+		 * Each instance is stored under the composite key of its type and PK.
+		 */
+		PER_KEY,
+	}
+
+	public enum StateFormat {
+		/**
+		 * States are written with Genson.
+		 */
+		JSON,
+		/**
+		 * States are written with the codec generated for each entity, see BinaryState in the project skeleton.
+		 */
+		BINARY,
+	}
+
+	public StorageLayout storageLayout = StorageLayout.TABLE;
+
+	public StateFormat stateFormat = StateFormat.JSON;
+
+	/**
+	 * EntityManager buffers the state writes of a transaction and writes each key once when the transaction ends.
+	 */
+	public boolean writeBack = false;
+
+	/**
+	 * A change of options changes the generated code, so {@link IncrementalManifest} compares them.
+	 */
+	@Override
+	public String toString() {
+		return "storageLayout=" + storageLayout + ", writeBack=" + writeBack + ", stateFormat=" + stateFormat;
+	}
+}
@@ -1,10 +1,17 @@
 package rm2hyperledger;
 
+import rm2hyperledger.vcs.VcsBackend;
+
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public abstract class GitCommit {
@@ -13,40 +20,179 @@ public abstract class GitCommit {
 
 	private final String commitMessage;
 
+	/**
+	 * The backend of the running {@link #editCommit(VcsBackend)}, for {@link #commitStep(String, ArrayList)}.
+	 */
+	private VcsBackend vcs;
+
+	/**
+	 * Real paths of the files this step may edit, or null for all files.
+	 */
+	private Set<Path> selectedFiles = null;
+
+	/**
+	 * The pool that edits the files in parallel, or null to edit them one by one.
+	 */
+	private ForkJoinPool pool = null;
+
 	public GitCommit(String commitMessage, String targetFolder) {
 		this.commitMessage = commitMessage;
 		this.targetFolder = targetFolder;
 	}
 
+	/**
+	 * Edit the files in parallel in the pool of the conversion, which the conversion shuts down when it ends.
+	 *
+	 * @param pool null to edit the files one by one
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Restrict this step to the given files, so that an incremental conversion leaves the other files alone.
+	 *
+	 * @param selectedFiles real paths, or null for all files
+	 */
+	public void setSelectedFiles(Set<Path> selectedFiles) {
+		this.selectedFiles = selectedFiles;
+	}
+
+	public String getCommitMessage() {
+		return commitMessage;
+	}
+
+	protected boolean isSelected(Path file) {
+		return isSelected(selectedFiles, file);
+	}
+
+	static boolean isSelected(Set<Path> selectedFiles, Path file) {
+		return selectedFiles == null || selectedFiles.contains(FileHelper.getRealPath(file));
+	}
+
 	/**
 	 *
 	 * @return changed files to be committed in Git
 	 */
 	protected abstract ArrayList<Path> editCommitCore() throws IOException;
 
-	public void editCommit() {
+	public void editCommit(VcsBackend vcs) {
+		OperationProfile profile = OperationProfile.start(getClass().getSimpleName(), vcs);
+		this.vcs = vcs;
 		try {
+			long start = System.nanoTime();
 			ArrayList<Path> changedFiles = editCommitCore();
+			long edited = System.nanoTime();
 			fixLineEnding(changedFiles);
+			profile.setEditNanos(edited - start);
+			profile.setLineEndingNanos(System.nanoTime() - edited);
+			profile.setFilesChanged(changedFiles.size());
 
-			Runtime.getRuntime().exec(Stream.concat(Stream.of("git", "add"), changedFiles.stream().map(Path::toString)).toArray(String[]::new),
-					null, new java.io.File(targetFolder)).waitFor();
-
-			Runtime.getRuntime().exec(new String[]{"git", "commit", "-m", commitMessage}, null, new java.io.File(targetFolder)).waitFor();
+			vcs.add(changedFiles.stream().map(Path::toString).toArray(String[]::new));
+			vcs.commit(commitMessage);
 		}
 		catch (IOException | InterruptedException exception) {
 			logger.severe(exception.toString());
 		}
+		finally {
+			this.vcs = null;
+			profile.stop();
+		}
+	}
+
+	/**
+	 * Commit files with their own message before {@link #editCommitCore()} returns, for a step that records several
+	 * commits. The files returned by editCommitCore are committed with the message of this step as usual.
+	 */
+	protected void commitStep(String message, ArrayList<Path> files) throws IOException {
+		fixLineEnding(files);
+		try {
+			vcs.add(files.stream().map(Path::toString).toArray(String[]::new));
+			vcs.commit(message);
+		}
+		catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IOException(exception);
+		}
+	}
+
+	protected ArrayList<Path> editFiles(Stream<Path> files, FileEditor editor) {
+		return editFiles(files, selectedFiles, pool, editor, logger);
+	}
+
+	/**
+	 * Edit each file independently, in parallel if a pool is given.
+	 * <p>
+	 * The editor must only share thread-safe state with other files.
+	 *
+	 * @param selectedFiles files not in this set are skipped. Null means all files.
+	 * @param pool          null to edit the files one by one
+	 * @return the files that the editor changed, in the order of the input.
+	 */
+	static ArrayList<Path> editFiles(Stream<Path> files, Set<Path> selectedFiles, ForkJoinPool pool, FileEditor editor, Logger logger) {
+		List<Path> list;
+		try (files) {
+			list = files.filter(f -> isSelected(selectedFiles, f)).collect(Collectors.toList());
+		}
+
+		boolean[] changed = new boolean[list.size()];
+		IntStream indexes = IntStream.range(0, list.size());
+		if (pool == null) {
+			indexes.forEach(i -> changed[i] = editFile(list.get(i), editor, logger));
+		} else {
+			try {
+				pool.submit(() -> indexes.parallel().forEach(i -> changed[i] = editFile(list.get(i), editor, logger))).get();
+			}
+			catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(exception);
+			}
+			catch (ExecutionException exception) {
+				if (exception.getCause() instanceof RuntimeException)
+					throw (RuntimeException) exception.getCause();
+				throw new IllegalStateException(exception.getCause());
+			}
+		}
+
+		ArrayList<Path> changedFiles = new ArrayList<>();
+		for (int i = 0; i < changed.length; i++) {
+			if (changed[i])
+				changedFiles.add(list.get(i));
+		}
+		return changedFiles;
+	}
+
+	private static boolean editFile(Path file, FileEditor editor, Logger logger) {
+		try {
+			return editor.edit(file);
+		}
+		catch (IOException exception) {
+			logger.severe(exception.toString());
+			return false;
+		}
 	}
 
 
 	protected void fixLineEnding(ArrayList<Path> changedFiles) throws IOException {
 
 		for (Path file : changedFiles) {
-			String content = Files.readString(file);
-			content = content.replaceAll("((?<!\\r)\\n|\\r(?!\\n))", System.getProperty("line.separator"));
+			Workspace workspace = Workspace.find(file);
+			if (workspace != null) {
+				// The workspace fixes line endings when it writes the file.
+				if (vcs != null && vcs.readsWorkingTree())
+					workspace.flush(List.of(file));
+				continue;
+			}
 
-			Files.writeString(file, content);
+			FileHelper.fixLineEnding(file);
 		}
 	}
+
+	@FunctionalInterface
+	protected interface FileEditor {
+		/**
+		 * @return true if the file is changed.
+		 */
+		boolean edit(Path file) throws IOException;
+	}
 }
@@ -41,16 +41,24 @@ public abstract class ImportsCollector<T> extends JavaParserBaseVisitor<T> {
 			assert newImport.contains(" ") == false: String.format("\"import %s\" is invalid.", newImport);
 			if (newImport.endsWith(".*")) {
 				if (imported.stream().anyMatch(p -> p.getKey().equals(newImport)) == false)
-					rewriter.insertAfter(importPoint, "\nimport " + newImport + ";");
+					insertImport(importPoint, newImport);
 				continue;
 			}
 
 			String starImport = newImport.substring(0, newImport.lastIndexOf('.')) + ".*";
 			if (imported.stream().anyMatch(p -> p.getKey().equals(starImport)) == false)
-				rewriter.insertAfter(importPoint, "\nimport " + newImport + ";");
+				insertImport(importPoint, newImport);
 		}
 
 		return returnValue;
 	}
 
+	private void insertImport(Token importPoint, String newImport) {
+		if (rewriter instanceof FusedRewriter.Step)
+			// Also checked against the imports of the earlier steps.
+			((FusedRewriter.Step) rewriter).insertImport(importPoint, newImport);
+		else
+			rewriter.insertAfter(importPoint, "\nimport " + newImport + ";");
+	}
+
 }
@@ -0,0 +1,295 @@
+package rm2hyperledger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Remembers the inputs and outputs of the last conversion of a target folder, so that the next conversion only
+ * converts the files that changed since then, together with the files depending on them.
+ * <p>
+ * The manifest and copies of the inputs and outputs are kept in the .rm2hyperledger folder of the target folder.
+ * Delete the folder to force a full conversion.
+ * <p>
+ * Dependencies between files:
+ * <ul>
+ *     <li>All steps depend on the entity classes and the primary keys in the REModel,
+ *     so a change to them converts everything.</li>
+ *     <li>A contract implementation depends on its interface, and vice versa.</li>
+ *     <li>All contract implementations depend on the system interface, whose fields are global.</li>
+ *     <li>All files depend on the {@link GeneratorOptions}.</li>
+ * </ul>
+ */
+public class IncrementalManifest {
+	private static final Logger logger = Logger.getLogger(IncrementalManifest.class.getSimpleName());
+
+	private static final String FOLDER = ".rm2hyperledger";
+	private static final String MANIFEST_FILE = "manifest.properties";
+
+	private final Path folder;
+	private final Path sourceFolder;
+	private final Path entitiesFolder;
+	private final Path servicesFolder;
+	private final Path implFolder;
+
+	private final Properties properties = new Properties();
+	private final boolean loaded;
+
+	private String remodelName;
+	private String primaryKeys;
+	private String options;
+
+	/**
+	 * Files converted in this run, and their contents before the conversion.
+	 */
+	private final HashMap<Path, byte[]> inputs = new HashMap<>();
+
+	/**
+	 * Files in the source folder before the conversion.
+	 */
+	private final HashSet<Path> existingFiles = new HashSet<>();
+
+	private IncrementalManifest(String targetFolder) throws IOException {
+		Path root = FileHelper.getRealPath(Path.of(targetFolder));
+		folder = root.resolve(FOLDER);
+		sourceFolder = FileHelper.getRealPath(Path.of(targetFolder, "src", "main", "java"));
+		entitiesFolder = FileHelper.getRealPath(Path.of(targetFolder, "src", "main", "java", "entities"));
+		servicesFolder = FileHelper.getRealPath(Path.of(targetFolder, "src", "main", "java", "services"));
+		implFolder = FileHelper.getRealPath(Path.of(targetFolder, "src", "main", "java", "services", "impl"));
+
+		Path manifestFile = folder.resolve(MANIFEST_FILE);
+		loaded = Files.exists(manifestFile);
+		if (loaded) {
+			try (InputStream in = Files.newInputStream(manifestFile)) {
+				properties.load(in);
+			}
+		}
+	}
+
+	public static IncrementalManifest load(String targetFolder) throws IOException {
+		return new IncrementalManifest(targetFolder);
+	}
+
+	/**
+	 * Compare the target folder with the last conversion.
+	 * <p>
+	 * Files that are regenerated without changes get their previous output back. Files that need to be converted again
+	 * get their previous input back if they still hold their previous output.
+	 *
+	 * @return real paths of the files to convert, or null if all files need to be converted.
+	 */
+	public Set<Path> prepare(String reModelFile, GeneratorOptions options) throws IOException {
+		remodelName = Path.of(reModelFile).getFileName().toString();
+		primaryKeys = new TreeMap<>(new PrimaryKeyCollector(reModelFile).collect()).toString();
+		this.options = options.toString();
+
+		boolean full = false;
+		if (loaded == false) {
+			logger.info("No manifest of the last conversion is found. Convert all files.");
+			full = true;
+		} else if (remodelName.equals(properties.getProperty("remodel")) == false || primaryKeys.equals(properties.getProperty("primaryKeys")) == false) {
+			logger.info("Primary keys in the REModel are changed. Convert all files.");
+			full = true;
+		} else if (this.options.equals(properties.getProperty("options")) == false) {
+			logger.info("Generator options are changed. Convert all files.");
+			full = true;
+		}
+
+		List<Path> files = listSourceFiles();
+		HashMap<Path, String> hashes = new HashMap<>();
+		LinkedHashSet<Path> changedFiles = new LinkedHashSet<>();
+		for (Path file : files) {
+			String hash = hash(Files.readAllBytes(file));
+			hashes.put(file, hash);
+			String key = getKey(file);
+			if (hash.equals(properties.getProperty("output." + key)) == false && hash.equals(properties.getProperty("input." + key)) == false)
+				changedFiles.add(file);
+		}
+
+		if (full == false) {
+			for (Path file : getRecordedInputs()) {
+				if (hashes.containsKey(file) == false && isEntityOrInterface(file)) {
+					logger.info(String.format("%s is removed. Convert all files.", sourceFolder.relativize(file)));
+					full = true;
+					break;
+				}
+			}
+		}
+		if (full == false) {
+			var changedEntity = changedFiles.stream().filter(f -> f.getParent().equals(entitiesFolder) && isEntityManager(f) == false).findFirst();
+			if (changedEntity.isPresent()) {
+				logger.info(String.format("%s is changed. Convert all files.", sourceFolder.relativize(changedEntity.get())));
+				full = true;
+			}
+		}
+
+		Set<Path> selectedFiles = full ? new HashSet<>(files) : addDependentFiles(changedFiles, files);
+		for (Path file : files) {
+			String key = getKey(file);
+			boolean isOutput = hashes.get(file).equals(properties.getProperty("output." + key));
+			if (selectedFiles.contains(file)) {
+				if (isOutput) {
+					Path input = folder.resolve("input").resolve(key);
+					if (Files.exists(input) && properties.containsKey("input." + key)) {
+						Files.copy(input, file, StandardCopyOption.REPLACE_EXISTING);
+					} else {
+						// Created by the last conversion, such as the files from the project skeleton.
+						Files.delete(file);
+						continue;
+					}
+				}
+				inputs.put(file, Files.readAllBytes(file));
+			} else if (isOutput == false) {
+				Files.copy(folder.resolve("output").resolve(key), file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			existingFiles.add(file);
+			ParsedSourceCache.invalidate(file);
+		}
+
+		if (full)
+			return null;
+
+		// Files created by the last conversion from all entities, such as their converters, are only created by a
+		// full conversion.
+		for (Path file : getCreatedOutputs()) {
+			if (hashes.containsKey(file) == false)
+				write(file, Files.readAllBytes(folder.resolve("output").resolve(getKey(file))));
+		}
+
+		logger.info(String.format("Convert %d of %d files incrementally.", selectedFiles.size(), files.size()));
+		return selectedFiles;
+	}
+
+	/**
+	 * @return the primary keys of the last conversion, including the guid fields added to entities without one.
+	 */
+	public List<FieldDefinition> getPkMap() {
+		return properties.stringPropertyNames().stream().filter(k -> k.startsWith("pk.")).sorted().map(k -> {
+			String[] parts = properties.getProperty(k).split(" ", 2);
+			return new FieldDefinition(k.substring("pk.".length()), parts[0], parts[1]);
+		}).collect(Collectors.toCollection(CopyOnWriteArrayList::new));
+	}
+
+	public Set<String> getEntityNames() {
+		String names = properties.getProperty("entityNames", "");
+		return names.isEmpty() ? new HashSet<>() : new HashSet<>(Arrays.asList(names.split(",")));
+	}
+
+	/**
+	 * Record the result of this run.
+	 */
+	public void save(List<FieldDefinition> pkMap, Set<String> entityNames) throws IOException {
+		Properties result = new Properties();
+		result.setProperty("remodel", remodelName);
+		result.setProperty("primaryKeys", primaryKeys);
+		result.setProperty("options", options);
+		for (FieldDefinition d : pkMap)
+			result.setProperty("pk." + d.ClassName, d.VariableName + " " + d.VariableType);
+		result.setProperty("entityNames", entityNames.stream().sorted().collect(Collectors.joining(",")));
+
+		for (Path file : listSourceFiles()) {
+			String key = getKey(file);
+
+			byte[] output = Files.readAllBytes(file);
+			String outputHash = hash(output);
+			if (outputHash.equals(properties.getProperty("output." + key)) == false)
+				write(folder.resolve("output").resolve(key), output);
+			result.setProperty("output." + key, outputHash);
+
+			// Files created by this run have no input.
+			if (inputs.containsKey(file)) {
+				byte[] input = inputs.get(file);
+				String inputHash = hash(input);
+				if (inputHash.equals(properties.getProperty("input." + key)) == false)
+					write(folder.resolve("input").resolve(key), input);
+				result.setProperty("input." + key, inputHash);
+			} else if (existingFiles.contains(file) && properties.containsKey("input." + key)) {
+				result.setProperty("input." + key, properties.getProperty("input." + key));
+			}
+		}
+
+		Files.createDirectories(folder);
+		try (OutputStream out = Files.newOutputStream(folder.resolve(MANIFEST_FILE))) {
+			result.store(out, "Inputs and outputs of the last conversion");
+		}
+	}
+
+	private Set<Path> addDependentFiles(Set<Path> changedFiles, List<Path> files) {
+		HashSet<Path> selectedFiles = new HashSet<>(changedFiles);
+		String systemFile = FileHelper.getFileNameWithoutExtension(remodelName) + "System.java";
+		for (Path file : changedFiles) {
+			String name = FileHelper.getFileNameWithoutExtension(file.getFileName().toString());
+			if (file.getParent().equals(servicesFolder)) {
+				if (file.getFileName().toString().equals(systemFile)) {
+					files.stream().filter(f -> f.getParent().equals(servicesFolder) || f.getParent().equals(implFolder)).forEach(selectedFiles::add);
+				} else {
+					selectedFiles.add(implFolder.resolve(name + "Impl.java"));
+				}
+			} else if (file.getParent().equals(implFolder) && name.endsWith("Impl")) {
+				selectedFiles.add(servicesFolder.resolve(name.substring(0, name.length() - "Impl".length()) + ".java"));
+			}
+		}
+		selectedFiles.retainAll(files);
+		return selectedFiles;
+	}
+
+	private boolean isEntityOrInterface(Path file) {
+		return (file.getParent().equals(entitiesFolder) && isEntityManager(file) == false) || file.getParent().equals(servicesFolder);
+	}
+
+	private static boolean isEntityManager(Path file) {
+		return file.getFileName().toString().equals("EntityManager.java");
+	}
+
+	private List<Path> listSourceFiles() throws IOException {
+		try (Stream<Path> stream = Files.walk(sourceFolder)) {
+			return stream.filter(Files::isRegularFile).map(FileHelper::getRealPath).sorted().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * @return files that were converted by the last conversion, not created by it.
+	 */
+	private Set<Path> getRecordedInputs() {
+		return properties.stringPropertyNames().stream().filter(k -> k.startsWith("input.")).
+				map(k -> sourceFolder.resolve(k.substring("input.".length()))).collect(Collectors.toSet());
+	}
+
+	/**
+	 * @return files that were created by the last conversion, not converted by it.
+	 */
+	private Set<Path> getCreatedOutputs() {
+		return properties.stringPropertyNames().stream().filter(k -> k.startsWith("output.")).
+				map(k -> k.substring("output.".length())).filter(k -> properties.containsKey("input." + k) == false).
+				map(sourceFolder::resolve).collect(Collectors.toSet());
+	}
+
+	private String getKey(Path file) {
+		return sourceFolder.relativize(file).toString();
+	}
+
+	private static void write(Path file, byte[] content) throws IOException {
+		Files.createDirectories(file.getParent());
+		Files.write(file, content);
+	}
+
+	private static String hash(byte[] content) {
+		try {
+			return new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(content)).toString(16);
+		}
+		catch (NoSuchAlgorithmException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package rm2hyperledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Converts line endings to one separator without regular expressions.
+ * <p>
+ * Like the regular expression {@code ((?<!\r)\n|\r(?!\n))} that it replaces, it converts "\n" and "\r" on their
+ * own, and keeps "\r\n". The content is first scanned to find whether anything changes, and the length after
+ * converting; it is returned as is if nothing changes, so that the caller can skip writing it. Files are converted
+ * as bytes without decoding them, since the bytes of '\r' and '\n' are not part of other characters in UTF-8.
+ */
+public final class LineEndings {
+	public static final String SYSTEM = System.lineSeparator();
+
+	private static final int bufferSize = 8192;
+
+	private LineEndings() {
+	}
+
+	/**
+	 * @return the converted text, or the same instance if nothing changes.
+	 */
+	public static String normalize(String text, String separator) {
+		int length = text.length();
+		int convertedLength = length;
+		boolean changed = false;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n')
+				i++;
+			else if (c == '\n' || c == '\r') {
+				changed |= separator.length() != 1 || separator.charAt(0) != c;
+				convertedLength += separator.length() - 1;
+			}
+		}
+		if (changed == false)
+			return text;
+
+		char[] converted = new char[convertedLength];
+		int at = 0;
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+				i++;
+				continue;
+			}
+			if (c != '\n' && c != '\r')
+				continue;
+
+			text.getChars(start, i, converted, at);
+			at += i - start;
+			separator.getChars(0, separator.length(), converted, at);
+			at += separator.length();
+			start = i + 1;
+		}
+		text.getChars(start, length, converted, at);
+		return new String(converted);
+	}
+
+	/**
+	 * @param content the bytes from the position to the limit are converted, and the buffer is not modified.
+	 * @return the converted bytes, from 0 to the limit, or the same instance if nothing changes.
+	 */
+	public static ByteBuffer normalize(ByteBuffer content, String separator) {
+		int from = content.position();
+		int to = content.limit();
+		int convertedLength = to - from;
+		boolean changed = false;
+		for (int i = from; i < to; i++) {
+			byte b = content.get(i);
+			if (b == '\r' && i + 1 < to && content.get(i + 1) == '\n')
+				i++;
+			else if (b == '\n' || b == '\r') {
+				changed |= separator.length() != 1 || separator.charAt(0) != b;
+				convertedLength += separator.length() - 1;
+			}
+		}
+		if (changed == false)
+			return content;
+
+		ByteBuffer converted = ByteBuffer.allocate(convertedLength);
+		ByteBuffer run = content.duplicate();
+		int start = from;
+		for (int i = from; i < to; i++) {
+			byte b = content.get(i);
+			if (b == '\r' && i + 1 < to && content.get(i + 1) == '\n') {
+				i++;
+				continue;
+			}
+			if (b != '\n' && b != '\r')
+				continue;
+
+			run.limit(i).position(start);
+			converted.put(run);
+			for (int s = 0; s < separator.length(); s++)
+				converted.put((byte) separator.charAt(s));
+			start = i + 1;
+		}
+		run.limit(to).position(start);
+		converted.put(run);
+		return converted.flip();
+	}
+
+	/**
+	 * Read the file until it finds "\r\n".
+	 *
+	 * @return "\r\n" if the file has it, otherwise "\n" or "\r" if the file has it, otherwise the line separator of
+	 * the system.
+	 */
+	public static String detect(Path file) throws IOException {
+		boolean hasLf = false;
+		boolean hasCr = false;
+		boolean afterCr = false;
+		try (FileChannel channel = FileChannel.open(file)) {
+			ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+			while (channel.read(buffer) > -1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					byte b = buffer.get();
+					if (b == '\n') {
+						if (afterCr)
+							return "\r\n";
+						hasLf = true;
+					}
+					else if (b == '\r')
+						hasCr = true;
+					afterCr = b == '\r';
+				}
+				buffer.clear();
+			}
+		}
+
+		if (hasLf)
+			return "\n";
+		else if (hasCr)
+			return "\r";
+		else
+			return SYSTEM;
+	}
+}
@@ -0,0 +1,186 @@
+package rm2hyperledger;
+
+import rm2hyperledger.vcs.VcsBackend;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Time, I/O and memory spent by one step of a conversion.
+ * <p>
+ * Lexing, parsing, reading and writing are counted by {@link ParsedSourceCache} and {@link FileHelper} in the
+ * {@link RunReport} of the conversion, by all threads that work for it, so with {@code --jobs} the lexing and parsing
+ * time of a step may exceed its wall time. Visiting is the time of {@link GitCommit#editCommitCore()} less lexing,
+ * parsing and writing. When a {@link Batch} converts several projects at the same time, the allocated bytes also
+ * include the other projects.
+ */
+public class OperationProfile {
+	private static final com.sun.management.ThreadMXBean threads = getThreadMXBean();
+
+	public static final String[] COLUMNS = {"operation", "wallMs", "editMs", "lexMs", "parseMs", "visitMs", "writeMs",
+			"lineEndingMs", "gitMs", "gitProcesses", "filesRead", "bytesRead", "filesWritten", "bytesWritten",
+			"filesChanged", "llFallbacks", "allocatedBytes"};
+
+	private final String name;
+	private final VcsBackend vcs;
+	private final RunReport.Counters counters;
+
+	private final long start;
+	private final long startLex;
+	private final long startParse;
+	private final long startWrite;
+	private final long startFilesRead;
+	private final long startBytesRead;
+	private final long startFilesWritten;
+	private final long startBytesWritten;
+	private final long startFallbacks;
+	private final long startGitProcesses;
+	private final long startGitNanos;
+	private final long startAllocated;
+
+	private long wall;
+	private long edit;
+	private long lex;
+	private long parse;
+	private long write;
+	private long lineEnding;
+	private long git;
+	private long gitProcesses;
+	private long read;
+	private long readBytes;
+	private long written;
+	private long writtenBytes;
+	private int filesChanged;
+	private long llFallbacks;
+	private long allocated;
+
+	private OperationProfile(String name, VcsBackend vcs) {
+		this.name = name;
+		this.vcs = vcs;
+		counters = RunReport.getCounters();
+
+		startLex = counters.lexNanos.get();
+		startParse = counters.parseNanos.get();
+		startWrite = counters.writeNanos.get();
+		startFilesRead = counters.filesRead.get();
+		startBytesRead = counters.bytesRead.get();
+		startFilesWritten = counters.filesWritten.get();
+		startBytesWritten = counters.bytesWritten.get();
+		startFallbacks = counters.fallbacks.get();
+		startGitProcesses = vcs == null ? 0 : vcs.getProcessCount();
+		startGitNanos = vcs == null ? 0 : vcs.getElapsedNanos();
+		startAllocated = currentAllocatedBytes();
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Start measuring a step.
+	 *
+	 * @param vcs the backend whose git processes are counted, or null
+	 */
+	public static OperationProfile start(String name, VcsBackend vcs) {
+		return new OperationProfile(name, vcs);
+	}
+
+	/**
+	 * Stop measuring and add the step to the run report.
+	 */
+	public void stop() {
+		wall = System.nanoTime() - start;
+		allocated = currentAllocatedBytes() - startAllocated;
+		lex = counters.lexNanos.get() - startLex;
+		parse = counters.parseNanos.get() - startParse;
+		write = counters.writeNanos.get() - startWrite;
+		read = counters.filesRead.get() - startFilesRead;
+		readBytes = counters.bytesRead.get() - startBytesRead;
+		written = counters.filesWritten.get() - startFilesWritten;
+		writtenBytes = counters.bytesWritten.get() - startBytesWritten;
+		llFallbacks = counters.fallbacks.get() - startFallbacks;
+		if (vcs != null) {
+			gitProcesses = vcs.getProcessCount() - startGitProcesses;
+			git = vcs.getElapsedNanos() - startGitNanos;
+		}
+		RunReport.add(this);
+	}
+
+	void setEditNanos(long nanos) {
+		edit = nanos;
+	}
+
+	void setLineEndingNanos(long nanos) {
+		lineEnding = nanos;
+	}
+
+	void setFilesChanged(int count) {
+		filesChanged = count;
+	}
+
+	static void countRead(long bytes) {
+		RunReport.Counters counters = RunReport.getCounters();
+		counters.filesRead.incrementAndGet();
+		counters.bytesRead.addAndGet(bytes);
+	}
+
+	static void countWrite(long bytes, long nanos) {
+		RunReport.Counters counters = RunReport.getCounters();
+		counters.filesWritten.incrementAndGet();
+		counters.bytesWritten.addAndGet(bytes);
+		counters.writeNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * @return bytes allocated so far by all live threads, or 0 if the JVM can't tell.
+	 */
+	private static long currentAllocatedBytes() {
+		if (threads == null)
+			return 0;
+
+		long sum = 0;
+		for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			if (allocated > 0)
+				sum += allocated;
+		}
+		return sum;
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadMXBean() {
+		var bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			((com.sun.management.ThreadMXBean) bean).setThreadAllocatedMemoryEnabled(true);
+			return (com.sun.management.ThreadMXBean) bean;
+		}
+		return null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getWallNanos() {
+		return wall;
+	}
+
+	public long getAllocatedBytes() {
+		return allocated;
+	}
+
+	public long getBytesRead() {
+		return readBytes;
+	}
+
+	public long getBytesWritten() {
+		return writtenBytes;
+	}
+
+	public long getGitProcesses() {
+		return gitProcesses;
+	}
+
+	/**
+	 * @return the values in the order of {@link #COLUMNS}, times in milliseconds.
+	 */
+	Object[] getValues() {
+		long visit = edit > 0 ? Math.max(0, edit - lex - parse - write) : 0;
+		return new Object[]{name, wall / 1e6, edit / 1e6, lex / 1e6, parse / 1e6, visit / 1e6, write / 1e6,
+				lineEnding / 1e6, git / 1e6, gitProcesses, read, readBytes, written, writtenBytes, filesChanged, llFallbacks, allocated};
+	}
+}
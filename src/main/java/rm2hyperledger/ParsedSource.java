@@ -0,0 +1,32 @@
+package rm2hyperledger;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+
+/**
+ * The tokens and the parse tree of one Java source file.
+ * <p>
+ * Both may be shared by several operations, so visitors must not modify them. Edit the source with a TokenStreamRewriter instead.
+ */
+public class ParsedSource {
+	private final String content;
+	private final CommonTokenStream tokens;
+	private final JavaParser.CompilationUnitContext compilationUnit;
+
+	ParsedSource(String content, CommonTokenStream tokens, JavaParser.CompilationUnitContext compilationUnit) {
+		this.content = content;
+		this.tokens = tokens;
+		this.compilationUnit = compilationUnit;
+	}
+
+	String getContent() {
+		return content;
+	}
+
+	public CommonTokenStream getTokens() {
+		return tokens;
+	}
+
+	public JavaParser.CompilationUnitContext getCompilationUnit() {
+		return compilationUnit;
+	}
+}
@@ -0,0 +1,132 @@
+package rm2hyperledger;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lexes and parses each Java file only once as long as its content doesn't change.
+ * <p>
+ * Entries are keyed by path and checked against the content hash, so a file rewritten by an operation is parsed again.
+ * <p>
+ * Files are parsed with SLL prediction first, which avoids the costly full-context prediction of the default mode.
+ * If SLL fails, the file is parsed again with full LL prediction. When SLL succeeds, the tree is the same as with LL.
+ */
+public class ParsedSourceCache {
+	private static final ConcurrentHashMap<Path, ParsedSource> entries = new ConcurrentHashMap<>();
+
+	public static ParsedSource parse(Path file) throws IOException {
+		Path key = file.toAbsolutePath().normalize();
+		String content = FileHelper.readSource(file);
+
+		RunReport.Counters counters = RunReport.getCounters();
+		ParsedSource cached = entries.get(key);
+		if (cached != null && cached.getContent().hashCode() == content.hashCode() && cached.getContent().equals(content)) {
+			counters.hits.incrementAndGet();
+			return cached;
+		}
+
+		counters.misses.incrementAndGet();
+		long start = System.nanoTime();
+		CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromString(content, file.toString())));
+		// Lex the whole file first, so that lexing and parsing can be timed separately.
+		tokens.fill();
+		long lexed = System.nanoTime();
+		ParsedSource source = new ParsedSource(content, tokens, parseCompilationUnit(tokens));
+		long parsed = System.nanoTime();
+		counters.lexNanos.addAndGet(lexed - start);
+		counters.parseNanos.addAndGet(parsed - lexed);
+		counters.fileParseNanos.add(parsed - start);
+		entries.put(key, source);
+		return source;
+	}
+
+	/**
+	 * Parse the tokens with SLL prediction, and again with LL prediction if that fails.
+	 * <p>
+	 * Use it for sources that are not files, so that they are parsed the same way.
+	 */
+	public static JavaParser.CompilationUnitContext parseCompilationUnit(CommonTokenStream tokens) {
+		JavaParser parser = new JavaParser(tokens);
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		try {
+			return parser.compilationUnit();
+		}
+		catch (ParseCancellationException exception) {
+			RunReport.getCounters().fallbacks.incrementAndGet();
+			// Also rewinds the tokens.
+			parser.reset();
+			parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+			parser.setErrorHandler(new DefaultErrorStrategy());
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			return parser.compilationUnit();
+		}
+	}
+
+	/**
+	 * Drop the cached parse of the file. Call it after the file is written.
+	 */
+	public static void invalidate(Path file) {
+		entries.remove(file.toAbsolutePath().normalize());
+	}
+
+	/**
+	 * Drop all cached parses, so that the next conversion parses every file again. The DFA caches of the lexer and
+	 * parser are kept.
+	 */
+	public static void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Drop the cached parses of the files in the folder, e.g. after its conversion, while other conversions go on.
+	 */
+	public static void clear(Path folder) {
+		Path prefix = folder.toAbsolutePath().normalize();
+		entries.keySet().removeIf(key -> key.startsWith(prefix));
+	}
+
+	/**
+	 * @return cache hits of the conversion running in this thread, see {@link RunReport}.
+	 */
+	public static long getHits() {
+		return RunReport.getCounters().hits.get();
+	}
+
+	public static long getMisses() {
+		return RunReport.getCounters().misses.get();
+	}
+
+	/**
+	 * @return lexing and parsing time of the first file parsed by the conversion running in this thread, or 0.
+	 */
+	public static long getFirstParseNanos() {
+		return RunReport.getCounters().getFirstParseNanos();
+	}
+
+	/**
+	 * @return median lexing and parsing time of the second half of the files parsed by the conversion running in this
+	 * thread, or 0.
+	 */
+	public static long getSteadyParseNanos() {
+		return RunReport.getCounters().getSteadyParseNanos();
+	}
+
+	/**
+	 * @return how many times SLL prediction failed and the source was parsed again with LL prediction, in the
+	 * conversion running in this thread.
+	 */
+	public static long getFallbacks() {
+		return RunReport.getCounters().fallbacks.get();
+	}
+}
@@ -1,28 +1,90 @@
 package rm2hyperledger;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.operations.*;
+import rm2hyperledger.vcs.VcsBackend;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class Program {
 	private static final Logger logger = Logger.getLogger("");
 
-	private static boolean canRunGit = false;
+	/**
+	 * The example project converted when neither --target nor --remodel is given.
+	 */
+	private static final String DEFAULT_TARGET_FOLDER = "D:\\rm2pt\\LibraryMS-hyperledger";
+	private static final String DEFAULT_REMODEL_FILE = "D:\\rm2pt\\RM2PT-win32.win32.x86_64-1.2.1\\workspace\\LibraryMS\\RequirementsModel\\LibraryManagementSystem.remodel";
+
+	private final String targetFolder;
+	private final String reModelFile;
+
+	private boolean canRunGit = false;
+
+	private List<FieldDefinition> pkMap;
+
+	/**
+	 * Files to convert in an incremental conversion, or null for all files.
+	 */
+	private Set<Path> selectedFiles = null;
+
+	/**
+	 * Run the steps that edit EntityManager.java on one parse of the file, see {@link FusedEntityManager}.
+	 */
+	private boolean fused = false;
+
+	/**
+	 * With {@link #fused}, still commit EntityManager.java after each of these steps.
+	 */
+	private boolean commitSteps = false;
+
+	/**
+	 * Keep the source files in a {@link Workspace} while the operations run.
+	 */
+	private boolean inMemory = false;
+
+	/**
+	 * The maximum number of files edited at the same time.
+	 */
+	private int jobs = 1;
+
+	/**
+	 * Edits the files of this conversion in parallel while the operations run, or null if {@link #jobs} is 1.
+	 */
+	private ForkJoinPool pool = null;
+
+	/**
+	 * Called before each operation edits the files, so that benchmarks can take a snapshot of its input.
+	 */
+	static Consumer<GitCommit> beforeOperation = operation -> {
+	};
+
+	/**
+	 * One conversion. The state of a conversion is kept in its instance, so that several projects can be converted
+	 * at the same time.
+	 */
+	private Program(String targetFolder, String reModelFile) {
+		this.targetFolder = targetFolder;
+		this.reModelFile = reModelFile;
+	}
 
-	public static void main(String[] args) throws IOException, URISyntaxException {
+	public static void main(String[] args) throws IOException, URISyntaxException, InterruptedException {
 		Locale.setDefault(new Locale("en", "US"));
 		List<String> argsList = Arrays.asList(args);
 		try {
@@ -40,9 +102,87 @@ public class Program {
 
 		}
 
+		if (argsList.contains("--daemon")) {
+			runDaemon(argsList);
+			return;
+		}
+
+		int i = argsList.indexOf("--batch");
+		if (i > -1 && i + 1 < argsList.size()) {
+			new Batch(argsList).run(Path.of(argsList.get(i + 1)));
+			return;
+		}
+		i = argsList.indexOf("--watch");
+		if (i > -1 && i + 1 < argsList.size()) {
+			new Batch(argsList).watch(Path.of(argsList.get(i + 1)));
+			return;
+		}
+
+		String targetFolder = getOption(argsList, "--target", DEFAULT_TARGET_FOLDER);
+		String reModelFile = getOption(argsList, "--remodel", DEFAULT_REMODEL_FILE);
+		convertProject(targetFolder, reModelFile, argsList);
+	}
+
+	private static String getOption(List<String> argsList, String name, String defaultValue) {
+		int i = argsList.indexOf(name);
+		return i > -1 && i + 1 < argsList.size() ? argsList.get(i + 1) : defaultValue;
+	}
 
-		String targetFolder = "D:\\rm2pt\\LibraryMS-hyperledger";
-		String reModelFile = "D:\\rm2pt\\RM2PT-win32.win32.x86_64-1.2.1\\workspace\\LibraryMS\\RequirementsModel\\LibraryManagementSystem.remodel";
+	/**
+	 * Read conversions from the standard input, one per line: the target folder, the REModel file and the options
+	 * of this conversion, quoted if they contain spaces. The options of the command line apply to all conversions.
+	 * <p>
+	 * The lexer and parser share their DFA caches between all instances, so the conversions after the first one
+	 * start with a warm parser, as well as with JIT-compiled code. After each conversion, a line with "ok" or
+	 * "failed" and the target folder is printed, so that a client knows when to send the next one.
+	 */
+	private static void runDaemon(List<String> argsList) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		String line;
+		while ((line = in.readLine()) != null) {
+			List<String> words = splitArguments(line);
+			if (words.isEmpty() || words.get(0).startsWith("#"))
+				continue;
+			if (words.size() < 2) {
+				logger.warning("Expected a target folder and a REModel file, got: " + line);
+				System.out.println("failed\t" + line);
+				continue;
+			}
+
+			List<String> projectArgs = new ArrayList<>(words.subList(2, words.size()));
+			projectArgs.addAll(argsList);
+			boolean succeeded = false;
+			try {
+				// Parse every file again, so that the parse latencies of the conversions can be compared.
+				ParsedSourceCache.clear();
+				convertProject(words.get(0), words.get(1), projectArgs);
+				succeeded = true;
+			}
+			catch (Exception exception) {
+				logger.severe(String.format("Unable to convert %s: %s", words.get(0), exception));
+			}
+			System.out.println((succeeded ? "ok\t" : "failed\t") + words.get(0));
+		}
+	}
+
+	static List<String> splitArguments(String line) {
+		List<String> words = new ArrayList<>();
+		Matcher matcher = Pattern.compile("\"([^\"]*)\"|(\\S+)").matcher(line);
+		while (matcher.find())
+			words.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+		return words;
+	}
+
+	/**
+	 * Convert one project. It may run at the same time as other conversions, in other threads.
+	 */
+	static void convertProject(String targetFolder, String reModelFile, List<String> argsList) throws IOException, URISyntaxException {
+		new Program(targetFolder, reModelFile).convertProject(argsList);
+	}
+
+	private void convertProject(List<String> argsList) throws IOException, URISyntaxException {
+		long start = System.nanoTime();
+		RunReport.clear();
 
 		if (System.getenv("autohotkey") != null)
 			Runtime.getRuntime().exec(new String[]{System.getenv("autohotkey"), Path.of("./src/autohotkey/closeTortoisegit.ahk").toAbsolutePath().toString(), targetFolder});
@@ -60,41 +200,206 @@ public class Program {
 			logger.info("Unable to run git: " + e1.getMessage());
 		}
 
+		VcsBackend vcs = VcsBackend.create(canRunGit ? "shell" : "none", targetFolder);
+		try {
+			int i = argsList.indexOf("--vcs");
+			if (i > -1 && i + 1 < argsList.size())
+				vcs = VcsBackend.create(argsList.get(i + 1), targetFolder);
+		}
+		catch (IllegalArgumentException exception) {
+			logger.warning(exception.getMessage());
+		}
 
-		new EntityManagerSaveStates(targetFolder).editCommit();
+		GeneratorOptions options = new GeneratorOptions();
+		try {
+			int i = argsList.indexOf("--storage");
+			if (i > -1 && i + 1 < argsList.size())
+				options.storageLayout = GeneratorOptions.StorageLayout.valueOf(argsList.get(i + 1).toUpperCase().replace('-', '_'));
+		}
+		catch (IllegalArgumentException exception) {
+			logger.warning("--storage must be followed by table or per-key. Use table.");
+		}
+		try {
+			int i = argsList.indexOf("--state-format");
+			if (i > -1 && i + 1 < argsList.size())
+				options.stateFormat = GeneratorOptions.StateFormat.valueOf(argsList.get(i + 1).toUpperCase());
+		}
+		catch (IllegalArgumentException exception) {
+			logger.warning("--state-format must be followed by json or binary. Use json.");
+		}
+		options.writeBack = argsList.contains("--write-back");
+		setFlags(argsList);
 
-		convertEntityManagerCallSite(targetFolder);
+		IncrementalManifest manifest = null;
+		if (argsList.contains("--incremental")) {
+			manifest = IncrementalManifest.load(targetFolder);
+			selectedFiles = manifest.prepare(reModelFile, options);
+		}
 
-		new EntityManagerRandomMethods(targetFolder).editCommit();
-		new EntityManagerStubGetterSetter(targetFolder).editCommit();
+		Set<String> entityNames;
+		try {
+			entityNames = convert(vcs, options, manifest);
+		}
+		finally {
+			// Other projects don't use these parses.
+			ParsedSourceCache.clear(Path.of(targetFolder));
+		}
 
-		var addTransactionWrapper = new ContractAddTransactionWrapper(targetFolder);
-		addTransactionWrapper.editCommit();
+		var profile = OperationProfile.start("copySkeleton", vcs);
+		copySkeleton(vcs);
+		profile.stop();
 
-		new TransactionReturnListToArray(targetFolder).editCommit();
+		if (manifest != null)
+			manifest.save(pkMap, entityNames);
 
-		new AddGensonToContract(targetFolder).editCommit();
+		profile = OperationProfile.start("finishVcs", vcs);
+		try {
+			vcs.finish();
+		}
+		catch (InterruptedException exception) {
+			logger.severe(exception.toString());
+		}
+		profile.stop();
 
-		removeRefreshMethod(targetFolder);
+		long elapsed = System.nanoTime() - start;
+		RunReport.setVcs(vcs, elapsed);
+		try {
+			RunReport.write(Path.of(targetFolder, ".rm2hyperledger"));
+		}
+		catch (IOException exception) {
+			logger.warning("Unable to write the run report. " + exception.getMessage());
+		}
+		if (argsList.contains("--profile"))
+			RunReport.printSummary(System.out);
 
-		//Why can't we run convertEntities before convertReferenceToPK?
-		ConvertEntities convertEntities = new ConvertEntities(targetFolder);
-		convertEntities.editCommit();
+		logger.info(String.format("Parsed source cache: %d hits, %d misses, %d LL fallbacks.", ParsedSourceCache.getHits(), ParsedSourceCache.getMisses(), ParsedSourceCache.getFallbacks()));
+		logger.info(String.format("Parse latency: %.2f ms for the first file, %.2f ms in the steady state.",
+				ParsedSourceCache.getFirstParseNanos() / 1e6, ParsedSourceCache.getSteadyParseNanos() / 1e6));
 
-		new MarkGensonConverters(targetFolder, convertEntities.getEntityNames()).editCommit();
+		logger.info(String.format("VCS backend %s ran %d git processes in %.3f s, %.0f%% of the %.3f s run.",
+				vcs.getName(), vcs.getProcessCount(), vcs.getElapsedNanos() / 1e9, 100.0 * vcs.getElapsedNanos() / elapsed, elapsed / 1e9));
+	}
 
-		new EntityManagerGetObjectByPK(targetFolder, convertEntities.getEntityNames()).editCommit();
+	/**
+	 * Run the operations on the source files of the target folder. The project skeleton is not copied.
+	 *
+	 * @param manifest the manifest of an incremental conversion, or null
+	 * @return names of the entity classes
+	 */
+	static Set<String> convert(String targetFolder, String reModelFile, VcsBackend vcs, GeneratorOptions options, IncrementalManifest manifest) throws IOException {
+		return convert(targetFolder, reModelFile, vcs, options, manifest, List.of());
+	}
 
-		convertReferenceToPK(reModelFile, targetFolder);
+	/**
+	 * @param argsList options that choose how the operations run: --fused, --fused-commits, --in-memory and --jobs
+	 */
+	static Set<String> convert(String targetFolder, String reModelFile, VcsBackend vcs, GeneratorOptions options, IncrementalManifest manifest, List<String> argsList) throws IOException {
+		Program program = new Program(targetFolder, reModelFile);
+		program.setFlags(argsList);
+		return program.convert(vcs, options, manifest);
+	}
 
-		new SaveModified(targetFolder, addTransactionWrapper.contractTransactions, convertEntities.getEntityNames()).editCommit();
+	private void setFlags(List<String> argsList) {
+		commitSteps = argsList.contains("--fused-commits");
+		fused = commitSteps || argsList.contains("--fused");
+		inMemory = argsList.contains("--in-memory");
+		try {
+			int i = argsList.indexOf("--jobs");
+			if (i > -1 && i + 1 < argsList.size())
+				jobs = Integer.parseInt(argsList.get(i + 1));
+		}
+		catch (NumberFormatException exception) {
+			logger.warning("--jobs must be followed by a number. Files are edited one by one.");
+		}
+	}
+
+	private Set<String> convert(VcsBackend vcs, GeneratorOptions options, IncrementalManifest manifest) throws IOException {
+		// Conversions running at the same time in a batch have their own pools, so they don't wait for each other.
+		pool = jobs > 1 ? new ForkJoinPool(jobs, RunReport.getWorkerThreadFactory(), null, false) : null;
+		try {
+			if (inMemory == false)
+				return convertSources(vcs, options, manifest);
+
+			Workspace workspace = Workspace.open(Path.of(targetFolder, "src", "main", "java"));
+			try {
+				return convertSources(vcs, options, manifest);
+			}
+			finally {
+				var profile = OperationProfile.start("flushWorkspace", vcs);
+				workspace.close();
+				profile.stop();
+			}
+		}
+		finally {
+			if (pool != null)
+				pool.shutdown();
+			pool = null;
+		}
+	}
+
+	private Set<String> convertSources(VcsBackend vcs, GeneratorOptions options, IncrementalManifest manifest) throws IOException {
+		// With fused, the steps that edit EntityManager.java run together once the entity names are known.
+		if (fused == false)
+			run(new EntityManagerSaveStates(targetFolder, options), vcs);
+
+		var profile = OperationProfile.start("convertEntityManagerCallSite", vcs);
+		convertEntityManagerCallSite();
+		profile.stop();
+
+		if (fused == false) {
+			run(new EntityManagerRandomMethods(targetFolder), vcs);
+			run(new EntityManagerStubGetterSetter(targetFolder, options), vcs);
+		}
+
+		var addTransactionWrapper = new ContractAddTransactionWrapper(targetFolder, options);
+		run(addTransactionWrapper, vcs);
+
+		run(new TransactionReturnListToArray(targetFolder), vcs);
+
+		run(new AddGensonToContract(targetFolder), vcs);
+
+		profile = OperationProfile.start("removeRefreshMethod", vcs);
+		removeRefreshMethod();
+		profile.stop();
+
+		//Why can't we run convertEntities before convertReferenceToPK?
+		ConvertEntities convertEntities = new ConvertEntities(targetFolder);
+		run(convertEntities, vcs);
+		// Entity classes are only converted again together with all other files.
+		Set<String> entityNames = selectedFiles == null ? convertEntities.getEntityNames() : manifest.getEntityNames();
+
+		run(new MarkGensonConverters(targetFolder, entityNames), vcs);
+
+		var saveModified = new SaveModified(targetFolder, addTransactionWrapper.contractTransactions, entityNames);
+		var getObjectByPK = new EntityManagerGetObjectByPK(targetFolder, entityNames, options);
+		if (fused) {
+			saveModified.setEditEntityManager(false);
+			run(new FusedEntityManager(targetFolder, List.of(new EntityManagerSaveStates(targetFolder, options),
+					new EntityManagerRandomMethods(targetFolder), new EntityManagerStubGetterSetter(targetFolder, options),
+					getObjectByPK, saveModified), commitSteps), vcs);
+		} else
+			run(getObjectByPK, vcs);
+
+		if (selectedFiles == null) {
+			convertReferenceToPK(vcs);
+			// The codecs write the PK fields that replace the references.
+			if (options.stateFormat == GeneratorOptions.StateFormat.BINARY)
+				run(new AddEntityBinaryCodec(targetFolder), vcs);
+			run(new AddEntityGensonConverters(targetFolder), vcs);
+		} else
+			pkMap = manifest.getPkMap();
+
+		run(saveModified, vcs);
 		// ConvertGlobalFields will change field access to getter access, so it's harder for SaveModified to tell what needs to save.
 		// so we call SaveModified before ConvertGlobalFields.
-		new ConvertContractFields(targetFolder, reModelFile, pkMap).editCommit();
+		// ConvertContractFields depends on pkMap, so a change of primary keys in the REModel converts all files again.
+		run(new ConvertContractFields(targetFolder, reModelFile, pkMap, options), vcs);
 
-		fixLineEnding(targetFolder);
+		profile = OperationProfile.start("fixLineEnding", vcs);
+		fixLineEnding();
+		profile.stop();
 
-		copySkeleton(targetFolder);
+		return entityNames;
 	}
 
 	private static String getFileNameWithoutExtension(Path file) {
@@ -106,21 +411,23 @@ public class Program {
 			return f;
 	}
 
-	static List<FieldDefinition> pkMap;
+	private void run(GitCommit operation, VcsBackend vcs) {
+		operation.setSelectedFiles(selectedFiles);
+		operation.setPool(pool);
+		beforeOperation.accept(operation);
+		operation.editCommit(vcs);
+	}
 
 	private static String findPKType(Path folder, String className, String pkName) {
 		String currentClassName = className;
 		try {
 			while (currentClassName != null) {
-				CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(Path.of(folder.toString(), currentClassName + ".java"))));
-
-				JavaParser parser = new JavaParser(tokens);
-				var typeName = FieldTypeFinder.findField(parser.compilationUnit(), pkName);
+				ParsedSource source = ParsedSourceCache.parse(Path.of(folder.toString(), currentClassName + ".java"));
+				var typeName = FieldTypeFinder.findField(source.getCompilationUnit(), pkName);
 				if (typeName != null)
 					return typeName;
 
-				parser.reset();
-				currentClassName = SuperClassVisitor.findSuperClass(parser.compilationUnit());
+				currentClassName = SuperClassVisitor.findSuperClass(source.getCompilationUnit());
 			}
 			logger.warning(String.format("Field %s is not found in %s and its super classes.", pkName, className + ".java"));
 		}
@@ -130,27 +437,29 @@ public class Program {
 		return null;
 	}
 
-	private static void convertReferenceToPK(String reModelFile, String targetFolder) throws IOException {
+	private void convertReferenceToPK(VcsBackend vcs) throws IOException {
+		var profile = OperationProfile.start("collectPrimaryKeys", vcs);
 		var primaryKeyCollector = new PrimaryKeyCollector(reModelFile);
 
 		pkMap = primaryKeyCollector.collect().entrySet().stream().map(s -> {
 			String pkName = StringHelper.lowercaseFirstLetter(s.getValue());
-			String type = findPKType(Path.of(targetFolder, "src\\main\\java\\entities"), s.getKey(), pkName);
+			String type = findPKType(Path.of(targetFolder, "src", "main", "java", "entities"), s.getKey(), pkName);
 			if (type != null)
 				return new FieldDefinition(s.getKey(), pkName, type);
 			else
 				return null;
-		}).filter(Objects::nonNull).collect(Collectors.toList());
+		}).filter(Objects::nonNull).collect(Collectors.toCollection(CopyOnWriteArrayList::new));
+		profile.stop();
 
-		new AddEntityGetPK(targetFolder, pkMap).editCommit();
+		run(new AddEntityGetPK(targetFolder, pkMap), vcs);
 
 
 		//For all entity classes, if they refer to another entity, the reference must be replaced by the PK.
-		new EntityChangeEntityReferenceToPK(targetFolder, pkMap).editCommit();
+		run(new EntityChangeEntityReferenceToPK(targetFolder, pkMap), vcs);
 	}
 
 
-	private static void copySkeleton(String targetFolder) throws URISyntaxException, IOException {
+	private void copySkeleton(VcsBackend vcs) throws URISyntaxException, IOException {
 		URI path = Program.class.getProtectionDomain().getCodeSource().getLocation().toURI();
 		URI resourcesPath = path.resolve("../../../resources/main/project-skeleton");
 
@@ -169,8 +478,8 @@ public class Program {
 			//On Windows
 			if (canRunGit) {
 				try {
-					Runtime.getRuntime().exec("git add gradle/wrapper/*", null, new java.io.File(targetFolder)).waitFor();
-					Runtime.getRuntime().exec("git add --chmod=+x gradlew", null, new java.io.File(targetFolder)).waitFor();
+					vcs.add("gradle/wrapper/*");
+					vcs.add("--chmod=+x", "gradlew");
 				}
 				catch (Exception e1) {
 					logger.warning("Unable to set execution bit for file ~/gradlew. " + e1.getMessage());
@@ -180,7 +489,7 @@ public class Program {
 
 		if(canRunGit) {
 			try {
-				Runtime.getRuntime().exec("git add --force gradle/wrapper/*", null, new java.io.File(targetFolder)).waitFor();
+				vcs.add("--force", "gradle/wrapper/*");
 			}
 			catch (Exception e1) {
 				logger.warning("Failed to run git: " + e1.getMessage());
@@ -203,73 +512,56 @@ public class Program {
 				});
 	}
 
-	private static void convertEntityManagerCallSite(String targetFolder) throws IOException {
-		Path servicesImplFolder = Path.of(targetFolder, "src\\main\\java\\services\\impl");
+	private void convertEntityManagerCallSite() throws IOException {
+		Path servicesImplFolder = Path.of(targetFolder, "src", "main", "java", "services", "impl");
 		assert Files.exists(servicesImplFolder);
 
-		Files.list(servicesImplFolder).forEach(impl -> {
-			try {
-				CommonTokenStream tokens;
-				tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(impl)));
-
-
-				JavaParser parser = new JavaParser(tokens);
-				TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
-				var converter = new EntityManagerCallSiteConverter(rewriter);
+		GitCommit.editFiles(Files.list(servicesImplFolder), selectedFiles, pool, impl -> {
+			ParsedSource source = ParsedSourceCache.parse(impl);
+			TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+			var converter = new EntityManagerCallSiteConverter(rewriter);
 
-				converter.visit(parser.compilationUnit());
-				try (PrintWriter out = new PrintWriter(impl.toFile())) {
-					out.print(rewriter.getText());
-				}
-			}
-			catch (IOException exception) {
-				logger.severe(exception.toString());
-			}
-		});
+			converter.visit(source.getCompilationUnit());
+			FileHelper.writeSource(impl, rewriter.getText());
+			return true;
+		}, logger);
 	}
 
 
-	private static void removeRefreshMethod(String targetFolder) throws IOException {
+	private void removeRefreshMethod() throws IOException {
 
-		Path servicesImplFolder = Path.of(targetFolder, "src\\main\\java\\services\\impl");
+		Path servicesImplFolder = Path.of(targetFolder, "src", "main", "java", "services", "impl");
 		assert Files.exists(servicesImplFolder);
 
-		Files.list(servicesImplFolder).forEach(impl -> {
-			try {
-				CommonTokenStream tokens;
-				tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(impl)));
-
-
-				JavaParser parser = new JavaParser(tokens);
-				TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
-				var refreshRemover = new RefreshRemover(rewriter);
+		GitCommit.editFiles(Files.list(servicesImplFolder), selectedFiles, pool, impl -> {
+			ParsedSource source = ParsedSourceCache.parse(impl);
+			TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+			var refreshRemover = new RefreshRemover(rewriter);
 
-				refreshRemover.visit(parser.compilationUnit());
-				// System.out.print(rewriter.getText());
-				try (PrintWriter out = new PrintWriter(impl.toFile())) {
-					out.print(rewriter.getText());
-				}
-			}
-			catch (IOException exception) {
-				logger.severe(exception.toString());
-			}
-		});
+			refreshRemover.visit(source.getCompilationUnit());
+			// System.out.print(rewriter.getText());
+			FileHelper.writeSource(impl, rewriter.getText());
+			return true;
+		}, logger);
 	}
 
 
-	private static void fixLineEnding(String targetFolder) throws IOException {
-		Path servicesImplFolder = Path.of(targetFolder, "src\\main\\java");
+	private void fixLineEnding() throws IOException {
+		Path servicesImplFolder = Path.of(targetFolder, "src", "main", "java");
 		assert Files.exists(servicesImplFolder);
 
 		Files.walk(servicesImplFolder).forEach(impl -> {
 			try {
-				if (Files.isDirectory(impl))
+				if (Files.isDirectory(impl) || GitCommit.isSelected(selectedFiles, impl) == false)
 					return;
 
-				String content = Files.readString(impl);
-				content = content.replaceAll("((?<!\\r)\\n|\\r(?!\\n))", System.getProperty("line.separator"));
+				if (inMemory) {
+					// Read it, so that the workspace fixes its line endings when it writes the changed files.
+					FileHelper.readSource(impl);
+					return;
+				}
 
-				Files.writeString(impl, content);
+				FileHelper.fixLineEnding(impl);
 			}
 			catch (IOException exception) {
 				logger.severe(exception.toString());
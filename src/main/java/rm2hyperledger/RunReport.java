@@ -0,0 +1,227 @@
+package rm2hyperledger;
+
+import rm2hyperledger.vcs.VcsBackend;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * The {@link OperationProfile}s of a conversion, in the order the steps ran, and the git processes of the whole
+ * conversion.
+ * <p>
+ * Each thread has its own report, so that conversions running at the same time in a batch don't mix their steps.
+ * The steps are started and stopped by the thread of the conversion, even if the files are edited by other threads.
+ * The threads of a pool from {@link #getWorkerThreadFactory()} count their reads, writes and parses into the report of
+ * the conversion that created the pool.
+ */
+public class RunReport {
+	private static final ThreadLocal<Run> runs = ThreadLocal.withInitial(Run::new);
+
+	static void add(OperationProfile profile) {
+		runs.get().profiles.add(profile);
+	}
+
+	public static List<OperationProfile> getProfiles() {
+		return new ArrayList<>(runs.get().profiles);
+	}
+
+	/**
+	 * Start the report of a new conversion in this thread.
+	 */
+	public static void clear() {
+		runs.set(new Run());
+	}
+
+	static Counters getCounters() {
+		return runs.get().counters;
+	}
+
+	/**
+	 * @return a factory of pool threads that count into the report of the calling thread
+	 */
+	public static ForkJoinPool.ForkJoinWorkerThreadFactory getWorkerThreadFactory() {
+		Run run = runs.get();
+		return pool -> new ForkJoinWorkerThread(pool) {
+			@Override
+			protected void onStart() {
+				super.onStart();
+				runs.set(run);
+			}
+		};
+	}
+
+	/**
+	 * Record the git processes of the conversion, after its last step.
+	 *
+	 * @param elapsedNanos wall time of the whole conversion
+	 */
+	public static void setVcs(VcsBackend vcs, long elapsedNanos) {
+		Run run = runs.get();
+		run.vcs = vcs;
+		run.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Write run-report.json and run-report.csv into the folder. The CSV file has the steps, the JSON file also has the
+	 * git processes of each git command.
+	 */
+	public static void write(Path folder) throws IOException {
+		List<OperationProfile> profiles = getProfiles();
+		Files.createDirectories(folder);
+
+		StringBuilder csv = new StringBuilder(String.join(",", OperationProfile.COLUMNS)).append('\n');
+		for (OperationProfile profile : profiles) {
+			Object[] values = profile.getValues();
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0)
+					csv.append(',');
+				csv.append(format(values[i], false));
+			}
+			csv.append('\n');
+		}
+		Files.writeString(folder.resolve("run-report.csv"), csv);
+
+		String json = profiles.stream().map(profile -> {
+			Object[] values = profile.getValues();
+			StringBuilder object = new StringBuilder("    {");
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0)
+					object.append(", ");
+				object.append('"').append(OperationProfile.COLUMNS[i]).append("\": ").append(format(values[i], true));
+			}
+			return object.append('}').toString();
+		}).collect(Collectors.joining(",\n", "  \"operations\": [\n", "\n  ]"));
+		Files.writeString(folder.resolve("run-report.json"), "{\n" + getVcsJson() + ",\n" + getParseJson() + ",\n" + json + "\n}\n");
+	}
+
+	private static String getParseJson() {
+		Counters counters = getCounters();
+		return String.format(Locale.ROOT, "  \"parsedSourceCache\": {\"hits\": %d, \"misses\": %d, \"llFallbacks\": %d, \"firstParseMs\": %.3f, \"steadyParseMs\": %.3f}",
+				counters.hits.get(), counters.misses.get(), counters.fallbacks.get(), counters.getFirstParseNanos() / 1e6, counters.getSteadyParseNanos() / 1e6);
+	}
+
+	private static String getVcsJson() {
+		Run run = runs.get();
+		if (run.vcs == null)
+			return "  \"vcs\": null";
+
+		VcsBackend vcs = run.vcs;
+		List<String> commands = new ArrayList<>();
+		for (String command : vcs.getCommands())
+			commands.add(String.format(Locale.ROOT, "    {\"command\": %s, \"gitProcesses\": %d, \"gitMs\": %.3f}",
+					format(command, true), vcs.getProcessCount(command), vcs.getElapsedNanos(command) / 1e6));
+		return String.format(Locale.ROOT, "  \"vcs\": {\"backend\": %s, \"runMs\": %.3f, \"gitProcesses\": %d, \"gitMs\": %.3f, \"commands\": [%s]}",
+				format(vcs.getName(), true), run.elapsedNanos / 1e6, vcs.getProcessCount(), vcs.getElapsedNanos() / 1e6,
+				commands.isEmpty() ? "" : "\n" + String.join(",\n", commands) + "\n  ");
+	}
+
+	private static String format(Object value, boolean quote) {
+		if (value instanceof Double)
+			return String.format(Locale.ROOT, "%.3f", (Double) value);
+		if (value instanceof String)
+			return quote ? '"' + ((String) value).replace("\\", "\\\\").replace("\"", "\\\"") + '"' : (String) value;
+		return value.toString();
+	}
+
+	/**
+	 * Print the steps from the slowest to the fastest.
+	 */
+	public static void printSummary(PrintStream out) {
+		List<OperationProfile> profiles = getProfiles();
+		long total = profiles.stream().mapToLong(OperationProfile::getWallNanos).sum();
+
+		out.printf("%-36s %10s %6s %10s %10s %12s %5s%n", "Operation", "Wall ms", "%", "Read KB", "Written KB", "Allocated MB", "Git");
+		profiles.stream().sorted(Comparator.comparingLong(OperationProfile::getWallNanos).reversed()).forEach(p ->
+				out.printf("%-36s %10.1f %5.1f%% %10.1f %10.1f %12.1f %5d%n", p.getName(), p.getWallNanos() / 1e6,
+						total == 0 ? 0 : 100.0 * p.getWallNanos() / total, p.getBytesRead() / 1024.0,
+						p.getBytesWritten() / 1024.0, p.getAllocatedBytes() / 1048576.0, p.getGitProcesses()));
+		out.printf("%-36s %10.1f%n", "Total", total / 1e6);
+
+		Run run = runs.get();
+		if (run.vcs == null)
+			return;
+		VcsBackend vcs = run.vcs;
+		out.printf("%nVCS backend %s: %d git processes in %.1f ms, %.1f%% of the %.1f ms run.%n", vcs.getName(),
+				vcs.getProcessCount(), vcs.getElapsedNanos() / 1e6,
+				run.elapsedNanos == 0 ? 0 : 100.0 * vcs.getElapsedNanos() / run.elapsedNanos, run.elapsedNanos / 1e6);
+		for (String command : vcs.getCommands())
+			out.printf("  git %-10s %5d processes %10.1f ms%n", command, vcs.getProcessCount(command), vcs.getElapsedNanos(command) / 1e6);
+	}
+
+	/**
+	 * Reads, writes and parses of a conversion, in all threads that work for it.
+	 */
+	static class Counters {
+		final AtomicLong lexNanos = new AtomicLong();
+		final AtomicLong parseNanos = new AtomicLong();
+		final AtomicLong writeNanos = new AtomicLong();
+		final AtomicLong filesRead = new AtomicLong();
+		final AtomicLong bytesRead = new AtomicLong();
+		final AtomicLong filesWritten = new AtomicLong();
+		final AtomicLong bytesWritten = new AtomicLong();
+
+		/**
+		 * Parses found in and missing from {@link ParsedSourceCache}.
+		 */
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+
+		/**
+		 * Parses for which SLL prediction failed and the source was parsed again with LL prediction.
+		 */
+		final AtomicLong fallbacks = new AtomicLong();
+
+		/**
+		 * Lexing and parsing time of each file, in the order of parsing.
+		 */
+		final List<Long> fileParseNanos = Collections.synchronizedList(new ArrayList<>());
+
+		/**
+		 * @return lexing and parsing time of the first file parsed, or 0.
+		 */
+		long getFirstParseNanos() {
+			synchronized (fileParseNanos) {
+				return fileParseNanos.isEmpty() ? 0 : fileParseNanos.get(0);
+			}
+		}
+
+		/**
+		 * @return median lexing and parsing time of the second half of the files parsed, or 0.
+		 */
+		long getSteadyParseNanos() {
+			List<Long> steady;
+			synchronized (fileParseNanos) {
+				steady = new ArrayList<>(fileParseNanos.subList(fileParseNanos.size() / 2, fileParseNanos.size()));
+			}
+			if (steady.isEmpty())
+				return 0;
+			Collections.sort(steady);
+			return steady.get(steady.size() / 2);
+		}
+	}
+
+	/**
+	 * The report of one conversion.
+	 */
+	private static class Run {
+		private final List<OperationProfile> profiles = new ArrayList<>();
+		private final Counters counters = new Counters();
+
+		/**
+		 * The backend of the conversion, or null until it ends.
+		 */
+		private VcsBackend vcs;
+		private long elapsedNanos;
+	}
+}
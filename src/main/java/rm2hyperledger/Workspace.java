@@ -0,0 +1,136 @@
+package rm2hyperledger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The source files of a folder, kept in memory while the folder is converted, so that each file is read from disk
+ * once and each changed file is written once.
+ * <p>
+ * {@link FileHelper#readSource(Path)} and {@link FileHelper#writeSource(Path, String)} use the workspace of the
+ * folder, if one is open. A file is read the first time a step reads it, and written by {@link #flush(Collection)}
+ * or {@link #close()} with the line separator of the system, so line endings are fixed once per file. A file that
+ * doesn't exist yet is written at once, so that the steps that list the folder find it.
+ */
+public class Workspace {
+	private static final Map<Path, Workspace> open = new ConcurrentHashMap<>();
+
+	private final Path folder;
+	private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+	private Workspace(Path folder) {
+		this.folder = folder;
+	}
+
+	public static Workspace open(Path folder) {
+		Path key = folder.toAbsolutePath().normalize();
+		Workspace workspace = new Workspace(key);
+		if (open.putIfAbsent(key, workspace) != null)
+			throw new IllegalStateException(folder + " is already open.");
+		return workspace;
+	}
+
+	/**
+	 * @return the open workspace that contains the file, or null.
+	 */
+	static Workspace find(Path file) {
+		if (open.isEmpty())
+			return null;
+
+		Path key = file.toAbsolutePath().normalize();
+		for (Workspace workspace : open.values()) {
+			if (key.startsWith(workspace.folder))
+				return workspace;
+		}
+		return null;
+	}
+
+	String read(Path file) throws IOException {
+		Path key = file.toAbsolutePath().normalize();
+		Entry entry = entries.get(key);
+		if (entry != null)
+			return entry.text;
+
+		String text = FileHelper.readFile(file);
+		entries.put(key, new Entry(text, false));
+		return text;
+	}
+
+	/**
+	 * @return false if the file doesn't exist yet, and must be written now.
+	 */
+	boolean write(Path file, String text) {
+		Path key = file.toAbsolutePath().normalize();
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			if (Files.exists(file) == false)
+				return false;
+			entries.put(key, new Entry(text, true));
+			return true;
+		}
+
+		entry.text = text;
+		entry.dirty = true;
+		return true;
+	}
+
+	/**
+	 * Write the files that are changed, or whose line endings need to be fixed, and keep them in the workspace.
+	 */
+	public void flush(Collection<Path> files) throws IOException {
+		for (Path file : files) {
+			Path key = file.toAbsolutePath().normalize();
+			Entry entry = entries.get(key);
+			if (entry != null)
+				flush(key, entry);
+		}
+	}
+
+	public void flush() throws IOException {
+		for (var entry : entries.entrySet())
+			flush(entry.getKey(), entry.getValue());
+	}
+
+	private void flush(Path file, Entry entry) throws IOException {
+		String text = FileHelper.fixLineEnding(entry.text);
+		boolean fixed = text != entry.text;
+		if (entry.dirty == false && fixed == false)
+			return;
+
+		long start = System.nanoTime();
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		Files.write(file, bytes);
+		OperationProfile.countWrite(bytes.length, System.nanoTime() - start);
+		if (fixed)
+			ParsedSourceCache.invalidate(file);
+		entry.text = text;
+		entry.dirty = false;
+	}
+
+	/**
+	 * Flush all files and stop keeping them in memory.
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			open.remove(folder);
+		}
+	}
+
+	private static class Entry {
+		volatile String text;
+		volatile boolean dirty;
+
+		Entry(String text, boolean dirty) {
+			this.text = text;
+			this.dirty = dirty;
+		}
+	}
+}
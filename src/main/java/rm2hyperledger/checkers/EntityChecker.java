@@ -1,9 +1,8 @@
 package rm2hyperledger.checkers;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import rm2hyperledger.JavaLexer;
 import rm2hyperledger.JavaParser;
+import rm2hyperledger.ParsedSource;
+import rm2hyperledger.ParsedSourceCache;
 import rm2hyperledger.JavaParserBaseVisitor;
 
 import java.io.IOException;
@@ -14,10 +13,9 @@ public class EntityChecker extends JavaParserBaseVisitor<Object> {
 
 	public static boolean isEntityClass(Path file) {
 		try {
-			CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(file)));
-			JavaParser parser = new JavaParser(tokens);
+			ParsedSource source = ParsedSourceCache.parse(file);
 			var visitor = new EntityChecker();
-			visitor.visitCompilationUnit(parser.compilationUnit());
+			visitor.visitCompilationUnit(source.getCompilationUnit());
 			return visitor.isEntity;
 		}
 		catch (IOException exception) {
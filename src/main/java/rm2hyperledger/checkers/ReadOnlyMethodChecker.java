@@ -0,0 +1,143 @@
+package rm2hyperledger.checkers;
+
+import rm2hyperledger.JavaParser;
+import rm2hyperledger.JavaParserBaseVisitor;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Tells whether a service method only reads the ledger, so that its transaction can be evaluated without being
+ * ordered and committed.
+ * <p>
+ * A method is read-only if its body
+ * <ul>
+ *     <li>only assigns local variables and parameters,</li>
+ *     <li>on objects it didn't create itself or receive as parameters, only calls getters (getXxx, isXxx), queries
+ *     such as equals() or size(), and the methods of StandardOPs, because any other method, e.g. makePayment() of an
+ *     entity or endSale() of another service, may change the ledger,</li>
+ *     <li>only calls getters and refresh() of its own class, for the same reason.</li>
+ * </ul>
+ * The check is conservative: a method that is read-only in fact may still be classified as mutating.
+ */
+public class ReadOnlyMethodChecker extends JavaParserBaseVisitor<Object> {
+	private static final Pattern getterName = Pattern.compile("(get|is)([A-Z_]\\w*)?");
+	/**
+	 * Methods of Object, String and the collections that don't change their object.
+	 */
+	private static final Set<String> queryNames = Set.of("equals", "hashCode", "toString", "compareTo", "length", "size", "isEmpty", "contains");
+	/**
+	 * Classes whose static methods only compute their result.
+	 */
+	private static final Set<String> queryClasses = Set.of("StandardOPs");
+	private static final Set<String> assignmentOperators = Set.of("=", "+=", "-=", "*=", "/=", "&=", "|=", "^=", ">>=", ">>>=", "<<=", "%=");
+	private static final Set<String> incrementOperators = Set.of("++", "--");
+	private static final Pattern ownReaderName = Pattern.compile("(get|is)([A-Z_]\\w*)?|refresh");
+
+	/**
+	 * Local variables and parameters.
+	 */
+	private final Set<String> locals = new HashSet<>();
+
+	/**
+	 * Local variables holding objects created by the method, and parameters, which are deserialized from the
+	 * transaction arguments.
+	 */
+	private final Set<String> freshLocals = new HashSet<>();
+
+	private boolean isReadOnly = true;
+
+	private ReadOnlyMethodChecker() {
+
+	}
+
+	public static boolean isReadOnly(JavaParser.MethodDeclarationContext ctx) {
+		var checker = new ReadOnlyMethodChecker();
+		checker.visitMethodDeclaration(ctx);
+		return checker.isReadOnly;
+	}
+
+	@Override
+	public Object visitFormalParameter(JavaParser.FormalParameterContext ctx) {
+		String name = ctx.variableDeclaratorId().IDENTIFIER().getText();
+		locals.add(name);
+		freshLocals.add(name);
+		return null;
+	}
+
+	@Override
+	public Object visitLocalVariableDeclaration(JavaParser.LocalVariableDeclarationContext ctx) {
+		for (var declarator : ctx.variableDeclarators().variableDeclarator()) {
+			String name = declarator.variableDeclaratorId().IDENTIFIER().getText();
+			locals.add(name);
+			var initializer = declarator.variableInitializer();
+			if (initializer != null && initializer.expression() != null && initializer.expression().creator() != null)
+				freshLocals.add(name);
+		}
+		return super.visitLocalVariableDeclaration(ctx);
+	}
+
+	@Override
+	public Object visitEnhancedForControl(JavaParser.EnhancedForControlContext ctx) {
+		locals.add(ctx.variableDeclaratorId().IDENTIFIER().getText());
+		return super.visitEnhancedForControl(ctx);
+	}
+
+	@Override
+	public Object visitLambdaParameters(JavaParser.LambdaParametersContext ctx) {
+		ctx.IDENTIFIER().forEach(id -> locals.add(id.getText()));
+		return super.visitLambdaParameters(ctx);
+	}
+
+	@Override
+	public Object visitCatchClause(JavaParser.CatchClauseContext ctx) {
+		locals.add(ctx.IDENTIFIER().getText());
+		return super.visitCatchClause(ctx);
+	}
+
+	@Override
+	public Object visitExpression(JavaParser.ExpressionContext ctx) {
+		if (isReadOnly == false)
+			return null;
+
+		boolean isAssignment = ctx.bop != null && assignmentOperators.contains(ctx.bop.getText());
+		boolean isIncrement = ctx.postfix != null || (ctx.prefix != null && incrementOperators.contains(ctx.prefix.getText()));
+		if ((isAssignment || isIncrement) && isLocal(ctx.expression(0)) == false) {
+			isReadOnly = false;
+			return null;
+		}
+
+		if (ctx.methodCall() != null && ctx.methodCall().IDENTIFIER() != null) {
+			String name = ctx.methodCall().IDENTIFIER().getText();
+			if (ctx.bop == null) {
+				if (ownReaderName.matcher(name).matches() == false) {
+					isReadOnly = false;
+					return null;
+				}
+			} else if (isFresh(ctx.expression(0)) == false && isQuery(ctx.expression(0), name) == false) {
+				isReadOnly = false;
+				return null;
+			}
+		}
+
+		return super.visitExpression(ctx);
+	}
+
+	private boolean isLocal(JavaParser.ExpressionContext ctx) {
+		if (ctx.primary() != null && ctx.primary().IDENTIFIER() != null)
+			return locals.contains(ctx.primary().IDENTIFIER().getText());
+		// An element of an array created by the method.
+		if (ctx.getChildCount() == 4 && "[".equals(ctx.getChild(1).getText()))
+			return isFresh(ctx.expression(0));
+		return false;
+	}
+
+	private static boolean isQuery(JavaParser.ExpressionContext receiver, String name) {
+		return getterName.matcher(name).matches() || queryNames.contains(name) || queryClasses.contains(receiver.getText());
+	}
+
+	private boolean isFresh(JavaParser.ExpressionContext ctx) {
+		return ctx.primary() != null && ctx.primary().IDENTIFIER() != null && freshLocals.contains(ctx.primary().IDENTIFIER().getText());
+	}
+}
@@ -0,0 +1,172 @@
+package rm2hyperledger.operations;
+
+import org.antlr.v4.runtime.TokenStreamRewriter;
+import rm2hyperledger.*;
+import rm2hyperledger.checkers.EntityChecker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * For {@link GeneratorOptions.StateFormat#BINARY}, add a codec to each entity class: writeBinary writes the fields
+ * that Genson would write, @Property and @JsonProperty, in the order they are declared, and readBinary reads them
+ * back. See BinaryState in the project skeleton.
+ */
+public class AddEntityBinaryCodec extends GitCommit {
+	public AddEntityBinaryCodec(String targetFolder) {
+		super("Add a binary codec to each entity class", targetFolder);
+	}
+
+	@Override
+	protected ArrayList<Path> editCommitCore() throws IOException {
+		Path folder = Path.of(targetFolder, "src", "main", "java", "entities");
+		Set<String> enumTypes = findEnumTypes(folder);
+		Set<String> entityTypes = SerializedFieldsVisitor.findEntityTypes(folder);
+
+		return editFiles(Files.list(folder), file -> {
+			if (file.toString().endsWith("EntityManager.java"))
+				return false;
+			if (EntityChecker.isEntityClass(file) == false)
+				return false;
+
+			ParsedSource source = ParsedSourceCache.parse(file);
+			TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+			var converter = new CodecAdder(rewriter, entityTypes, enumTypes);
+			converter.visit(source.getCompilationUnit());
+
+			FileHelper.writeSource(file, rewriter.getText());
+			return true;
+		});
+	}
+
+	private static Set<String> findEnumTypes(Path folder) throws IOException {
+		Set<String> enumTypes = new HashSet<>();
+		try (var files = Files.list(folder)) {
+			for (Path file : files.filter(f -> f.toString().endsWith(".java")).collect(Collectors.toList())) {
+				for (var type : ParsedSourceCache.parse(file).getCompilationUnit().typeDeclaration()) {
+					if (type.enumDeclaration() != null)
+						enumTypes.add(type.enumDeclaration().IDENTIFIER().getText());
+				}
+			}
+		}
+		return enumTypes;
+	}
+
+	static class CodecAdder extends SerializedFieldsVisitor {
+		static final Pattern valueListType = Pattern.compile("List<(Integer|Long|Short|Byte|Character|Boolean|Float|Double|String)>");
+
+		private final Set<String> enumTypes;
+
+		/**
+		 * The statements of writeBinary and readBinary, one per field.
+		 */
+		private final List<String> writes = new ArrayList<>();
+		private final List<String> reads = new ArrayList<>();
+
+		CodecAdder(TokenStreamRewriter rewriter, Set<String> entityTypes, Set<String> enumTypes) {
+			super(rewriter, entityTypes);
+			this.enumTypes = enumTypes;
+		}
+
+		@Override
+		protected void addField(String type, String name) {
+			String field = "this." + name;
+			switch (type) {
+				case "int":
+				case "long":
+				case "short":
+				case "char":
+				case "boolean":
+				case "float":
+				case "double":
+					String method = StringHelper.uppercaseFirstLetter(type);
+					add(String.format("out.write%s(%s);", method, field), String.format("%s = in.read%s();", field, method));
+					return;
+				case "byte":
+					add(String.format("out.writeByte(%s);", field), String.format("%s = (byte) in.readByte();", field));
+					return;
+				case "String":
+					add(String.format("out.writeString(%s);", field), String.format("%s = in.readString();", field));
+					return;
+				case "LocalDate":
+					add(String.format("out.writeDate(%s);", field), String.format("%s = in.readDate();", field));
+					return;
+				case "Object":
+					add(String.format("out.writeValue(%s);", field), String.format("%s = in.readValue();", field));
+					return;
+				case "Integer":
+				case "Long":
+				case "Short":
+				case "Byte":
+				case "Character":
+				case "Boolean":
+				case "Float":
+				case "Double":
+					add(String.format("out.writeValue(%s);", field), String.format("%s = (%s) in.readValue();", field, type));
+					return;
+				case "List<Object>":
+					add(String.format("out.writeValues(%s);", field), String.format("%s = in.readValues();", field));
+					return;
+			}
+			// The PKs of a reference list, which are tagged like those in a List<Object>.
+			if (valueListType.matcher(type).matches()) {
+				add(String.format("out.writeValues(%s);", field), String.format("%s = (List) in.readValues();", field));
+				return;
+			}
+			if (enumTypes.contains(type)) {
+				add(String.format("out.writeEnum(%s);", field), String.format("%s = in.readEnum(%s.class);", field, type));
+				return;
+			}
+			throw new UnsupportedOperationException(String.format("%s.%s: the binary state format doesn't support %s. Use --state-format json.",
+					className, name, type));
+		}
+
+		private void add(String write, String read) {
+			writes.add("\t" + write);
+			reads.add("\t" + read);
+		}
+
+		@Override
+		protected void addMembers(JavaParser.ClassDeclarationContext ctx) {
+			rewriter.insertAfter(ctx.typeList().stop, ", BinaryState.Encodable");
+
+			List<String> lines = new ArrayList<>();
+			if (isAbstract == false) {
+				lines.add("static {");
+				lines.add(String.format("\tBinaryState.register(%s.class, in -> {", className));
+				lines.add(String.format("\t\t%1$s o = new %1$s();", className));
+				lines.add("\t\to.readBinary(in);");
+				lines.add("\t\treturn o;");
+				lines.add("\t});");
+				lines.add("}");
+				lines.add("");
+			}
+
+			lines.add("@Override");
+			lines.add("public void writeBinary(BinaryState.Writer out) {");
+			if (hasEntitySuperClass)
+				lines.add("\tsuper.writeBinary(out);");
+			lines.addAll(writes);
+			lines.add("}");
+			lines.add("");
+
+			if (hasEntitySuperClass)
+				lines.add("@Override");
+			lines.add("protected void readBinary(BinaryState.Reader in) {");
+			if (hasEntitySuperClass)
+				lines.add("\tsuper.readBinary(in);");
+			lines.addAll(reads);
+			lines.add("}");
+			FormatHelper.increaseIndent(lines, 1);
+
+			rewriter.insertBefore(ctx.classBody().stop, "\n" + String.join("\n", lines) + "\n");
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package rm2hyperledger.operations;
+
+import org.antlr.v4.runtime.TokenStreamRewriter;
+import rm2hyperledger.*;
+import rm2hyperledger.checkers.EntityChecker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Add a Genson converter for each entity class, so that Genson doesn't introspect the entities by reflection.
+ * <p>
+ * The entity gets writeJson and readJson, which write and read its fields, @Property and @JsonProperty, in the order
+ * they are declared. The fields are private, so the converter in the converters package calls these methods.
+ * EntityConverters registers all converters in one Genson, which the contracts and the entity managers share so that
+ * Genson builds its converters once.
+ */
+public class AddEntityGensonConverters extends GitCommit {
+	static final String registryName = "EntityConverters";
+
+	/**
+	 * Types that are written and read without looking up a converter.
+	 */
+	private static final Map<String, String> streamTypes = Map.of(
+			"int", "Int",
+			"long", "Long",
+			"short", "Short",
+			"double", "Double",
+			"float", "Float",
+			"boolean", "Boolean",
+			"String", "String");
+
+	public AddEntityGensonConverters(String targetFolder) {
+		super("Add a Genson converter for each entity class", targetFolder);
+	}
+
+	@Override
+	protected ArrayList<Path> editCommitCore() throws IOException {
+		Path folder = Path.of(targetFolder, "src", "main", "java", "entities");
+		Set<String> entityTypes = SerializedFieldsVisitor.findEntityTypes(folder);
+		// Abstract entities have no converter, their fields are written by those of their sub classes.
+		Set<String> converted = ConcurrentHashMap.newKeySet();
+
+		ArrayList<Path> paths = editFiles(Files.list(folder), file -> {
+			if (file.toString().endsWith("EntityManager.java"))
+				return false;
+			if (EntityChecker.isEntityClass(file) == false)
+				return false;
+
+			ParsedSource source = ParsedSourceCache.parse(file);
+			TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+			var adder = new JsonMethodsAdder(rewriter, entityTypes);
+			adder.visit(source.getCompilationUnit());
+			FileHelper.writeSource(file, rewriter.getText());
+
+			if (adder.isAbstract == false)
+				converted.add(adder.className);
+			return true;
+		});
+
+		Path convertersFolder = Path.of(targetFolder, "src", "main", "java", "converters");
+		Files.createDirectories(convertersFolder);
+		List<String> names = converted.stream().sorted().collect(Collectors.toList());
+		for (String name : names) {
+			Path file = convertersFolder.resolve(name + "Converter.java");
+			FileHelper.writeSource(file, String.format(String.join("\n", converterTemplate), name) + "\n");
+			paths.add(file);
+		}
+
+		Path registry = convertersFolder.resolve(registryName + ".java");
+		// The converters of the types that MarkGensonConverters annotates, which are in the skeleton.
+		String converters = Stream.concat(names.stream(), MarkGensonConverters.GetterSetterVisitor.nonSerializableTypes.stream().sorted()).
+				map(name -> "new " + name + "Converter()").collect(Collectors.joining(", "));
+		FileHelper.writeSource(registry, String.format(String.join("\n", registryTemplate), registryName, converters) + "\n");
+		paths.add(registry);
+		return paths;
+	}
+
+	private static final List<String> converterTemplate = Arrays.asList(
+			"package converters;",
+			"",
+			"import com.owlike.genson.Context;",
+			"import com.owlike.genson.Converter;",
+			"import com.owlike.genson.stream.ObjectReader;",
+			"import com.owlike.genson.stream.ObjectWriter;",
+			"import entities.%1$s;",
+			"",
+			"public class %1$sConverter implements Converter<%1$s> {",
+			"	@Override",
+			"	public void serialize(%1$s object, ObjectWriter writer, Context ctx) {",
+			"		writer.beginObject();",
+			"		object.writeJson(writer, ctx);",
+			"		writer.endObject();",
+			"	}",
+			"",
+			"	@Override",
+			"	public %1$s deserialize(ObjectReader reader, Context ctx) {",
+			"		%1$s object = new %1$s();",
+			"		reader.beginObject();",
+			"		while (reader.hasNext()) {",
+			"			reader.next();",
+			"			if (object.readJson(reader, ctx) == false)",
+			"				reader.skipValue();",
+			"		}",
+			"		reader.endObject();",
+			"		return object;",
+			"	}",
+			"}");
+
+	private static final List<String> registryTemplate = Arrays.asList(
+			"package converters;",
+			"",
+			"import com.owlike.genson.Genson;",
+			"import com.owlike.genson.GensonBuilder;",
+			"",
+			"/**",
+			" * The converters of all entities, and of the types that Genson can't serialize by itself.",
+			" */",
+			"public final class %1$s {",
+			"	/**",
+			"	 * Genson caches the converters it builds, so all transactions share this instance.",
+			"	 */",
+			"	public static final Genson genson = new GensonBuilder().withConverters(%2$s).create();",
+			"",
+			"	private %1$s() {",
+			"	}",
+			"}");
+
+	static class JsonMethodsAdder extends SerializedFieldsVisitor {
+		/**
+		 * The statements of writeJson, and the cases of readJson, one per field.
+		 */
+		private final List<String> writes = new ArrayList<>();
+		private final List<String> reads = new ArrayList<>();
+		/**
+		 * The field names are identifiers, which don't need to be escaped in JSON.
+		 */
+		private final List<String> names = new ArrayList<>();
+		/**
+		 * The GenericType of each field whose type has type arguments.
+		 */
+		private final List<String> types = new ArrayList<>();
+
+		JsonMethodsAdder(TokenStreamRewriter rewriter, Set<String> entityTypes) {
+			super(rewriter, entityTypes);
+		}
+
+		@Override
+		protected void addField(String type, String name) {
+			String field = "this." + name;
+			String writeName = String.format("writer.writeEscapedName(jsonNames[%d])", names.size());
+			names.add("\"" + name + "\".toCharArray()");
+			String streamType = streamTypes.get(type);
+			reads.add(String.format("\tcase \"%s\":", name));
+			if (streamType != null) {
+				String write = streamType.equals("String") ? "writeString" : "writeValue";
+				writes.add(String.format("\t%s.%s(%s);", writeName, write, field));
+				reads.add(String.format("\t\t%s = reader.valueAs%s();", field, streamType));
+			} else {
+				// The value has no type arguments at run time, so it is written by its class. It is read as the
+				// declared type, otherwise the elements of a List<Integer> are read back as Long.
+				String rawType = type.replaceAll("<.*>", "");
+				writes.add(String.format("\t%s;", writeName));
+				writes.add(String.format("\tctx.genson.serialize(%s, %s.class, writer, ctx);", field, rawType));
+				String genericType;
+				if (type.equals(rawType))
+					genericType = String.format("GenericType.of(%s.class)", type);
+				else {
+					// Creating a GenericType of a parameterized type looks up its type argument by reflection.
+					genericType = name + "JsonType";
+					types.add(String.format("private static final GenericType<%1$s> %2$s = new GenericType<%1$s>() {};", type, genericType));
+				}
+				reads.add(String.format("\t\t%s = ctx.genson.deserialize(%s, reader, ctx);", field, genericType));
+				newImports.add("com.owlike.genson.GenericType");
+			}
+			reads.add("\t\treturn true;");
+		}
+
+		@Override
+		protected void addMembers(JavaParser.ClassDeclarationContext ctx) {
+			List<String> lines = new ArrayList<>();
+			if (names.isEmpty() == false) {
+				lines.add("private static final char[][] jsonNames = {" + String.join(", ", names) + "};");
+				lines.add("");
+			}
+			for (String type : types) {
+				lines.add(type);
+				lines.add("");
+			}
+			if (hasEntitySuperClass)
+				lines.add("@Override");
+			lines.add("public void writeJson(ObjectWriter writer, Context ctx) {");
+			if (hasEntitySuperClass)
+				lines.add("\tsuper.writeJson(writer, ctx);");
+			lines.addAll(writes);
+			lines.add("}");
+			lines.add("");
+
+			lines.add("/**");
+			lines.add(" * @return false if the current property is not a field of " + className + ".");
+			lines.add(" */");
+			if (hasEntitySuperClass)
+				lines.add("@Override");
+			lines.add("public boolean readJson(ObjectReader reader, Context ctx) {");
+			lines.add("\tswitch (reader.name()) {");
+			FormatHelper.increaseIndent(reads, 1);
+			lines.addAll(reads);
+			lines.add("\t\tdefault:");
+			lines.add(hasEntitySuperClass ? "\t\t\treturn super.readJson(reader, ctx);" : "\t\t\treturn false;");
+			lines.add("\t}");
+			lines.add("}");
+			FormatHelper.increaseIndent(lines, 1);
+
+			rewriter.insertBefore(ctx.classBody().stop, "\n" + String.join("\n", lines) + "\n");
+			newImports.add("com.owlike.genson.Context");
+			newImports.add("com.owlike.genson.stream.ObjectReader");
+			newImports.add("com.owlike.genson.stream.ObjectWriter");
+		}
+	}
+}
@@ -1,14 +1,11 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import rm2hyperledger.*;
 import rm2hyperledger.checkers.EntityChecker;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -24,63 +21,49 @@ public class AddEntityGetPK extends GitCommit {
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		ArrayList<Path> changedFiles = new ArrayList<>();
-
-		Files.list(Path.of(targetFolder, "src\\main\\java\\entities")).forEach(file -> {
-			try {
-				var fileNameWithoutExtension = FileHelper.getFileNameWithoutExtension(file.getFileName().toString());
-				if (fileNameWithoutExtension.equals("EntityManager"))
-					return;
-				if (EntityChecker.isEntityClass(file) == false)
-					return;
-
-				var pk = pkMap.stream().filter(s -> s.ClassName.equals(fileNameWithoutExtension)).findFirst();
-
-				String[] getPK = new String[]{
-						"public Object getPK() {",
-						"\treturn %s;",
-						"}"};
-				if (pk.isPresent())
-					getPK[1] = String.format(getPK[1], "get" + StringHelper.uppercaseFirstLetter(pk.get().VariableName) + "()");
-				else
-					getPK[1] = String.format(getPK[1], "guid");
-
-
-				CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(file)));
-				JavaParser parser = new JavaParser(tokens);
-				TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
-
-				var v = new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.Start, getPK);
-				v.visitCompilationUnit(parser.compilationUnit());
-				try (PrintWriter out = new PrintWriter(file.toFile())) {
-					out.print(rewriter.getText());
-				}
-
-				if (pk.isPresent() == false) {
-					// add guid
-					tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(file)));
-					parser = new JavaParser(tokens);
-					rewriter = new TokenStreamRewriter(tokens);
-
-					var converter = new EntityGuidAdder(rewriter);
-
-					converter.visit(parser.compilationUnit());
-					try (PrintWriter out = new PrintWriter(file.toFile())) {
-						out.print(rewriter.getText());
-					}
-					FieldDefinition e = new FieldDefinition(converter.className, "guid", "String");
-
-					pkMap.add(e);
-				}
-
-				changedFiles.add(file);
-			}
-			catch (IOException exception) {
-				logger.severe(exception.toString());
+		return editFiles(Files.list(Path.of(targetFolder, "src", "main", "java", "entities")), file -> {
+			var fileNameWithoutExtension = FileHelper.getFileNameWithoutExtension(file.getFileName().toString());
+			if (fileNameWithoutExtension.equals("EntityManager"))
+				return false;
+			if (EntityChecker.isEntityClass(file) == false)
+				return false;
+
+			var pk = pkMap.stream().filter(s -> s.ClassName.equals(fileNameWithoutExtension)).findFirst();
+
+			String[] getPK = new String[]{
+					"public Object getPK() {",
+					"\treturn %s;",
+					"}"};
+			if (pk.isPresent())
+				getPK[1] = String.format(getPK[1], "get" + StringHelper.uppercaseFirstLetter(pk.get().VariableName) + "()");
+			else
+				getPK[1] = String.format(getPK[1], "guid");
+
+
+			ParsedSource source = ParsedSourceCache.parse(file);
+			TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+
+			var v = new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.Start, getPK);
+			v.visitCompilationUnit(source.getCompilationUnit());
+			FileHelper.writeSource(file, rewriter.getText());
+
+			if (pk.isPresent() == false) {
+				// add guid
+				source = ParsedSourceCache.parse(file);
+				rewriter = new TokenStreamRewriter(source.getTokens());
+
+				var converter = new EntityGuidAdder(rewriter);
+
+				converter.visit(source.getCompilationUnit());
+				FileHelper.writeSource(file, rewriter.getText());
+				FieldDefinition e = new FieldDefinition(converter.className, "guid", "String");
+
+				// Other files may be edited at the same time, so pkMap must be thread-safe.
+				pkMap.add(e);
 			}
-		});
 
-		return changedFiles;
+			return true;
+		});
 	}
 
 	static class EntityGuidAdder extends ImportsCollector<Object> {
@@ -1,16 +1,14 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.stream.StreamSupport;
 
 public class AddGensonToContract extends GitCommit {
 	public AddGensonToContract(String targetFolder) {
@@ -19,29 +17,21 @@ public class AddGensonToContract extends GitCommit {
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		ArrayList<Path> changedFiles = new ArrayList<>();
-		try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of(targetFolder, "src\\main\\java\\services\\impl"), "*.java")) {
-			for (var f : files) {
-				if (FileHelper.getFileNameWithoutExtension(f.getFileName().toString()).endsWith("Impl")) {
-					try {
-						CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(f)));
-						JavaParser parser = new JavaParser(tokens);
-						TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of(targetFolder, "src", "main", "java", "services", "impl"), "*.java")) {
+			return editFiles(StreamSupport.stream(files.spliterator(), false), f -> {
+				if (FileHelper.getFileNameWithoutExtension(f.getFileName().toString()).endsWith("Impl") == false)
+					return false;
 
-						var converter = new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.Start,
-								new String[]{"private static final Genson genson = new Genson();"}, "com.owlike.genson.Genson");
-						converter.visitCompilationUnit(parser.compilationUnit());
-						try (PrintWriter out = new PrintWriter(f.toFile())) {
-							out.print(rewriter.getText());
-						}
-						changedFiles.add(f);
-					}
-					catch (IOException exception) {
-						logger.severe(exception.toString());
-					}
-				}
-			}
+				ParsedSource source = ParsedSourceCache.parse(f);
+				TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+
+				var converter = new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.Start,
+						new String[]{"private static final Genson genson = EntityConverters.genson;"}, "com.owlike.genson.Genson",
+						"converters.EntityConverters");
+				converter.visitCompilationUnit(source.getCompilationUnit());
+				FileHelper.writeSource(f, rewriter.getText());
+				return true;
+			});
 		}
-		return changedFiles;
 	}
 }
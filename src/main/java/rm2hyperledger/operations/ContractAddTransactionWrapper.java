@@ -1,66 +1,56 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
+import rm2hyperledger.checkers.ReadOnlyMethodChecker;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 public class ContractAddTransactionWrapper extends GitCommit {
-	public HashMap<String, List<String>> contractTransactions = new HashMap<>();
+	public Map<String, List<String>> contractTransactions = new ConcurrentHashMap<>();
 
 
-	public ContractAddTransactionWrapper(String targetFolder) {
+	private final GeneratorOptions options;
+
+	public ContractAddTransactionWrapper(String targetFolder, GeneratorOptions options) {
 		super("Add transaction wrapper", targetFolder);
+		this.options = options;
 	}
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		ArrayList<Path> changedFiles = new ArrayList<>();
-
-		Path servicesImplFolder = Path.of(targetFolder, "src\\main\\java\\services\\");
+		Path servicesImplFolder = Path.of(targetFolder, "src", "main", "java", "services");
 		assert Files.exists(servicesImplFolder);
-		Files.list(servicesImplFolder).forEach(interfaceFile -> {
-			if (Files.isDirectory(interfaceFile))
-				return;
+		var changedInterfaces = editFiles(Files.list(servicesImplFolder).filter(f -> Files.isDirectory(f) == false), interfaceFile -> {
+			ArrayList<String> methodsToRewrite = collectTransactionFunction(interfaceFile);
+			if (methodsToRewrite == null || methodsToRewrite.size() == 0)
+				return false;
 
-			try {
-				ArrayList<String> methodsToRewrite = collectTransactionFunction(interfaceFile);
-				if (methodsToRewrite == null || methodsToRewrite.size() == 0)
-					return;
+			var implementationFile = getImplementationFile(interfaceFile);
 
-				var implementationFile = Path.of(servicesImplFolder.toString(), "impl", FileHelper.getFileNameWithoutExtension(interfaceFile.getFileName().toString()) + "Impl.java");
+			ParsedSource source = ParsedSourceCache.parse(implementationFile);
+			TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+			var contractCollector = new AddWrapperVisitor(rewriter, methodsToRewrite, options);
+			contractCollector.visit(source.getCompilationUnit());
 
-				CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(implementationFile)));
-				TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
+			FileHelper.writeSource(implementationFile, rewriter.getText());
 
-				JavaParser parser = new JavaParser(tokens);
-				var contractCollector = new AddWrapperVisitor(rewriter, methodsToRewrite);
-				contractCollector.visit(parser.compilationUnit());
-
-				try (PrintWriter out = new PrintWriter(implementationFile.toString())) {
-					out.print(rewriter.getText());
-				}
-
-				contractTransactions.put(FileHelper.getFileNameWithoutExtension(implementationFile.getFileName().toString()), methodsToRewrite);
-
-				changedFiles.add(implementationFile);
-			}
-			catch (IOException exception) {
-				logger.severe(exception.toString());
-			}
+			contractTransactions.put(FileHelper.getFileNameWithoutExtension(implementationFile.getFileName().toString()), methodsToRewrite);
+			return true;
 		});
 
-		return changedFiles;
+		return changedInterfaces.stream().map(ContractAddTransactionWrapper::getImplementationFile).collect(Collectors.toCollection(ArrayList::new));
+	}
 
+	private static Path getImplementationFile(Path interfaceFile) {
+		return Path.of(interfaceFile.getParent().toString(), "impl", FileHelper.getFileNameWithoutExtension(interfaceFile.getFileName().toString()) + "Impl.java");
 	}
 
 	/**
@@ -69,11 +59,9 @@ public class ContractAddTransactionWrapper extends GitCommit {
 	 * @throws IOException
 	 */
 	private static ArrayList<String> collectTransactionFunction(Path interfaceFile) throws IOException {
-		CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(interfaceFile)));
-
-		JavaParser parser = new JavaParser(tokens);
+		ParsedSource source = ParsedSourceCache.parse(interfaceFile);
 		ServiceInterfaceConverter contractCollector = new ServiceInterfaceConverter();
-		contractCollector.visit(parser.compilationUnit());
+		contractCollector.visit(source.getCompilationUnit());
 
 		if (contractCollector.getContractMethods().size() == 0)
 			return null;
@@ -93,11 +81,13 @@ public class ContractAddTransactionWrapper extends GitCommit {
 
 	static class AddWrapperVisitor extends ImportsCollector<TransactionIntent> {
 		private final List<String> methodsToRewrite;
+		private final GeneratorOptions options;
 		private final Set<String> serializableTypes = Set.of("byte", "short", "int", "long", "float", "double", "boolean", "char", "String");
 
-		public AddWrapperVisitor(TokenStreamRewriter rewriter, List<String> methodsToRewrite) {
+		public AddWrapperVisitor(TokenStreamRewriter rewriter, List<String> methodsToRewrite, GeneratorOptions options) {
 			super(rewriter);
 			this.methodsToRewrite = methodsToRewrite;
+			this.options = options;
 		}
 
 //		@Override
@@ -124,22 +114,15 @@ public class ContractAddTransactionWrapper extends GitCommit {
 
 			String parameters;
 			String arguments;
-			String customGenson = null;
 			if (ctx.formalParameters().formalParameterList() != null) {
 				var formalParameterContexts = ctx.formalParameters().formalParameterList().formalParameter();
-				if (formalParameterContexts.stream().anyMatch(p -> p.typeType().getText().equals("LocalDate"))) {
-					customGenson = "\tvar genson = new GensonBuilder().withConverters(new LocalDateConverter()).create();";
-					// We do not add "com.owlike.genson.*" because com.owlike.genson.Context conflicts with the org.hyperledger.fabric.contract.Context.
-					newImports.add("com.owlike.genson.GensonBuilder");
-					newImports.add("converters.*");
-				}
-
 				parameters = formalParameterContexts.stream().
 						map(p -> {
 							return ", " + (serializableTypes.contains(p.typeType().getText()) ? p.typeType().getText() : "String") +
 									" " + p.variableDeclaratorId().getText();
 						}).collect(Collectors.joining());
 
+				// genson is the field that AddGensonToContract adds, which knows the converters of LocalDate and the entities.
 				arguments = formalParameterContexts.stream().
 						map(p -> {
 							String type = p.typeType().getText();
@@ -155,32 +138,36 @@ public class ContractAddTransactionWrapper extends GitCommit {
 				arguments = "";
 			}
 
+			// Read-only transactions are evaluated on a peer without going through the orderer.
+			TransactionIntent intent = ReadOnlyMethodChecker.isReadOnly(ctx) ? TransactionIntent.EVALUATE : TransactionIntent.SUBMIT;
+			ServiceInterfaceConverter.logger.fine(String.format("%s is %s.", identifier, intent));
+
 			ArrayList<String> lines;
 			if (ctx.typeTypeOrVoid().getText().equals("void"))
 				lines = new ArrayList<>(List.of(
-						"@Transaction(intent = Transaction.TYPE.SUBMIT)",
+						"@Transaction(intent = Transaction.TYPE.%6$s)",
 						"public %1$s %2$s(final Context ctx%3$s)%4$s {",
 						"\tChaincodeStub stub = ctx.getStub();",
-						"\tEntityManager.setStub(stub);",
+						"\tEntityManager.setStub(stub%7$s);",
 						"",
 						"\t%2$s(%5$s);",
 						"}"));
 			else
 				lines = new ArrayList<>(List.of(
-						"@Transaction(intent = Transaction.TYPE.SUBMIT)",
+						"@Transaction(intent = Transaction.TYPE.%6$s)",
 						"public %1$s %2$s(final Context ctx%3$s)%4$s {",
 						"\tChaincodeStub stub = ctx.getStub();",
-						"\tEntityManager.setStub(stub);",
+						"\tEntityManager.setStub(stub%7$s);",
 						"",
 						"\tvar res = %2$s(%5$s);",
 						"\treturn res;",
 						"}"));
-			if (customGenson != null)
-				lines.add(5, customGenson);
+			lines.add(6, "\tEntityManager.endTransaction();");
 			FormatHelper.increaseIndent(lines, 1);
 
 			String str = String.format(String.join("\n", lines),
-					ctx.typeTypeOrVoid().getText(), identifier, parameters, throwsList == null ? "" : " throws " + throwsList, arguments);
+					ctx.typeTypeOrVoid().getText(), identifier, parameters, throwsList == null ? "" : " throws " + throwsList, arguments,
+					intent, intent == TransactionIntent.EVALUATE ? ", true" : "");
 
 			newImports.add("org.hyperledger.fabric.shim.*");
 			newImports.add("org.hyperledger.fabric.contract.*");
@@ -1,76 +1,64 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 public class ConvertContractFields extends GitCommit {
 
 
 	private final String remodelFile;
 	private final List<FieldDefinition> pkMap;
+	private final GeneratorOptions options;
 
-	public ConvertContractFields(String targetFolder, String remodelFile, List<FieldDefinition> pkMap) {
+	public ConvertContractFields(String targetFolder, String remodelFile, List<FieldDefinition> pkMap, GeneratorOptions options) {
 		super("All fields of entity type in contract classes must be referenced by PK\n\nGlobal/system fields are retrieved from the system key.", targetFolder);
 		this.remodelFile = remodelFile;
 		this.pkMap = pkMap;
+		this.options = options;
 	}
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
 		var fileName = FileHelper.getFileNameWithoutExtension(Path.of(remodelFile).getFileName().toString());
-		var systemFile = Path.of(targetFolder, "src\\main\\java\\services\\", fileName + "System.java");
+		var systemFile = Path.of(targetFolder, "src", "main", "java", "services", fileName + "System.java");
 
 		Set<String> globalFields = SystemFieldsCollector.collect(systemFile).keySet();
 
 
-		ArrayList<Path> changedFiles = new ArrayList<>();
 		Set<String> entityNames = pkMap.stream().map(d -> d.ClassName).collect(Collectors.toSet());//.collect(Collectors.toSet());
-		try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of(targetFolder, "src\\main\\java\\services\\impl"), "*.java")) {
-			for (var f : files) {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of(targetFolder, "src", "main", "java", "services", "impl"), "*.java")) {
+			return editFiles(StreamSupport.stream(files.spliterator(), false), f -> {
 				if (f.getFileName().toString().equals("ServiceManager.java"))
-					continue;
+					return false;
 
-				try {
-					CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(f)));
+				ParsedSource source = ParsedSourceCache.parse(f);
 
-					JavaParser parser = new JavaParser(tokens);
+				var entityFieldsCollector = new SaveModified.EntityFieldsCollector(entityNames);
+				entityFieldsCollector.visit(source.getCompilationUnit());
 
-					var entityFieldsCollector = new SaveModified.EntityFieldsCollector(entityNames);
-					entityFieldsCollector.visit(parser.compilationUnit());
-					parser.reset();
+				TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(source.getTokens());
+				var fields = entityFieldsCollector.entityFields.entrySet().stream().
+						map(e -> new EntityField(e.getKey(), e.getValue(), pkMap.stream().filter(m -> m.ClassName.equals(e.getValue())).map(d -> d.VariableType).findFirst().get())).
+						collect(Collectors.toList());
+				var converter = new PKAdder(rewriter, globalFields, fields, options);
 
-					TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(tokens);
-					var fields = entityFieldsCollector.entityFields.entrySet().stream().
-							map(e -> new EntityField(e.getKey(), e.getValue(), pkMap.stream().filter(m -> m.ClassName.equals(e.getValue())).map(d -> d.VariableType).findFirst().get())).
-							collect(Collectors.toList());
-					var converter = new PKAdder(rewriter, globalFields, fields);
-
-					converter.visit(parser.compilationUnit());
-					if (rewriter.hasChanges()) {
-						try (PrintWriter out = new PrintWriter(f.toFile())) {
-							out.print(rewriter.getText());
-						}
-						changedFiles.add(f);
-					}
+				converter.visit(source.getCompilationUnit());
+				if (rewriter.hasChanges()) {
+					FileHelper.writeSource(f, rewriter.getText());
+					return true;
 				}
-				catch (IOException exception) {
-					logger.severe(exception.toString());
-				}
-			}
+				return false;
+			});
 		}
-
-		return changedFiles;
 	}
 
 
@@ -80,14 +68,23 @@ public class ConvertContractFields extends GitCommit {
 
 		private final Set<String> globalFields;
 		private final List<EntityField> classFields;
+		private final GeneratorOptions.StateFormat stateFormat;
 
 		private String className;
 
-		public PKAdder(TokenStreamRewriter rewriter, Set<String> globalFields, List<EntityField> classFields) {
+		public PKAdder(TokenStreamRewriter rewriter, Set<String> globalFields, List<EntityField> classFields, GeneratorOptions options) {
 			super(rewriter);
 
 			this.globalFields = globalFields;
 			this.classFields = classFields;
+			this.stateFormat = options.stateFormat;
+		}
+
+		/**
+		 * @return the statements of a PK setter that write the PK field %2$s to the state %3$s.%2$s.
+		 */
+		private List<String> writeState() {
+			return List.of("\tEntityManager.putFieldState(\"%3$s.%2$s\", %2$s);");
 		}
 
 		@Override
@@ -143,7 +140,7 @@ public class ConvertContractFields extends GitCommit {
 
 						var lines = new ArrayList<>(Arrays.asList(
 								"if (%1$s == null)",
-								"\t%1$s = %3$sPKs().stream().map(EntityManager::get%2$sByPK).collect(Collectors.toList());",
+								"\t%1$s = new LazyReferenceList<>(this, %3$sPKs(), %2$s.class, EntityManager::get%2$sByPKs, %2$s::getPK);",
 								"return %1$s;"));
 						FormatHelper.increaseIndent(lines, 2);
 
@@ -152,10 +149,13 @@ public class ConvertContractFields extends GitCommit {
 						super.newImports.add("java.util.stream.*");
 
 
+						String read = stateFormat == GeneratorOptions.StateFormat.BINARY ?
+								"\t\t%2$s = (List) BinaryState.deserializeList(BinaryState.fromBytes(EntityManager.stub.getState(\"%4$s.%2$s\")), %3$s.class);" :
+								"\t\t%2$s = (List) GensonHelper.deserializeList(genson, EntityManager.stub.getStringState(\"%4$s.%2$s\"), %3$s.class);";
 						var getPK = new ArrayList<>(Arrays.asList(
 								"private List<Object> %1$sPKs() {",
 								"\tif (%2$s == null)",
-								"\t\t%2$s = (List) GensonHelper.deserializeList(genson, EntityManager.stub.getStringState(\"%4$s.%2$s\"), %3$s.class);",
+								read,
 								"\treturn %2$s;",
 								"}"));
 						FormatHelper.increaseIndent(getPK, 1);
@@ -166,10 +166,13 @@ public class ConvertContractFields extends GitCommit {
 						rewriter.replace(ctx.methodBody().start, ctx.methodBody().stop,
 								"{\n\t\t" + String.format("return EntityManager.get%1$sByPK(%2$s());", returnType, methodName + "PK") + "\n\t}");
 
+						String read = stateFormat == GeneratorOptions.StateFormat.BINARY ?
+								"\t\t%2$s = BinaryState.deserialize(BinaryState.fromBytes(EntityManager.stub.getState(\"%4$s.%2$s\")), %3$s.class);" :
+								"\t\t%2$s = genson.deserialize(EntityManager.stub.getStringState(\"%4$s.%2$s\"), %3$s.class);";
 						var lines = new ArrayList<>(Arrays.asList(
 								"private Object %1$sPK() {",
 								"\tif (%2$s == null)",
-								"\t\t%2$s = genson.deserialize(EntityManager.stub.getStringState(\"%4$s.%2$s\"), %3$s.class);",
+								read,
 								"",
 								"\treturn %2$s;",
 								"}"));
@@ -185,20 +188,19 @@ public class ConvertContractFields extends GitCommit {
 					var m2 = listPattern.matcher(ctx.formalParameters().formalParameterList().formalParameter(0).typeType().getText());
 					if (m2.matches()) {
 						String[] setterBody = new String[]{
-								"%2$sPKs(%1$s.stream().map(LoanRequest::getPK).collect(Collectors.toList()));",
+								"%2$sPKs(%1$s.stream().map(%4$s::getPK).collect(Collectors.toList()));",
 								"this.%3$s = %1$s;"
 						};
 						FormatHelper.increaseIndent(setterBody, 2);
 						rewriter.replace(ctx.methodBody().start, ctx.methodBody().stop,
-								"{\n" + String.format(String.join("\n", setterBody), parameterName, methodName, StringHelper.lowercaseFirstLetter(m.group(2))) + "\n\t}");
+								"{\n" + String.format(String.join("\n", setterBody), parameterName, methodName, StringHelper.lowercaseFirstLetter(m.group(2)), m2.group(1)) + "\n\t}");
 
 
 						ArrayList<String> lines = new ArrayList<>(Arrays.asList(
 								"private void %1$sPKs(List<Object> %2$s) {",
-								"\tString json = genson.serialize(%2$s);",
-								"\tEntityManager.stub.putStringState(\"%3$s.%2$s\", json);",
 								"\tthis.%2$s = %2$s;",
 								"}"));
+						lines.addAll(1, writeState());
 						FormatHelper.increaseIndent(lines, 1);
 
 						rewriter.insertAfter(ctx.stop, "\n\n" + String.format(String.join("\n", lines), methodName, StringHelper.lowercaseFirstLetter(m.group(2)) + "PKs",
@@ -219,14 +221,13 @@ public class ConvertContractFields extends GitCommit {
 
 						ArrayList<String> lines = new ArrayList<>(Arrays.asList(
 								"private void %1$sPK(Object %2$s) {",
-								"\tString json = genson.serialize(%2$s);",
-								"\tEntityManager.stub.putStringState(\"%3$s.%2$s\", json);",
 								"\t//If we set %2$s to null, the getter thinks this fields is not initialized, thus will read the old value from chain.",
 								"\tif (%2$s != null)",
 								"\t\tthis.%2$s = %2$s;",
 								"\telse",
 								"\t\tthis.%2$s = EntityManager.getGuid();",
 								"}"));
+						lines.addAll(1, writeState());
 						FormatHelper.increaseIndent(lines, 1);
 
 						rewriter.insertAfter(ctx.stop, "\n\n" + String.format(String.join("\n", lines), methodName, StringHelper.lowercaseFirstLetter(m.group(2)) + "PK",
@@ -263,11 +264,10 @@ public class ConvertContractFields extends GitCommit {
 	static class SystemFieldsCollector extends JavaParserBaseVisitor<Object> {
 
 		public static HashMap<String, String> collect(Path systemFile) throws IOException {
-			CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(systemFile)));
-			JavaParser parser = new JavaParser(tokens);
+			ParsedSource source = ParsedSourceCache.parse(systemFile);
 			var collector = new SystemFieldsCollector();
 
-			collector.visit(parser.compilationUnit());
+			collector.visit(source.getCompilationUnit());
 //			collector.getters.retainAll(collector.setters);
 
 			return collector.getters;
@@ -1,6 +1,5 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.TokenStreamRewriter;
@@ -9,58 +8,47 @@ import rm2hyperledger.*;
 import rm2hyperledger.checkers.ModifierChecker;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ConvertEntities extends GitCommit {
 
-	private final HashSet<String> entityNames = new HashSet<>();
+	private final Set<String> entityNames = ConcurrentHashMap.newKeySet();
 
 	public ConvertEntities(String targetFolder) {
 		super("Add general (de)serialization support to entity classes", targetFolder);
 	}
 
-	public HashSet<String> getEntityNames() {
+	public Set<String> getEntityNames() {
 		return entityNames;
 	}
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		Path folder = Path.of(targetFolder, "src\\main\\java\\entities");
+		Path folder = Path.of(targetFolder, "src", "main", "java", "entities");
 		assert Files.exists(folder);
 
-		ArrayList<Path> changedFiles = new ArrayList<>();
-		Files.list(folder).forEach(file -> {
-			try {
-				if (file.toString().endsWith("EntityManager.java"))
-					return;
+		return editFiles(Files.list(folder), file -> {
+			if (file.toString().endsWith("EntityManager.java"))
+				return false;
 
-				CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(file)));
+			ParsedSource source = ParsedSourceCache.parse(file);
+			TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+			var converter = new EntityConverter(source.getTokens(), rewriter);
 
-
-				JavaParser parser = new JavaParser(tokens);
-				TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
-				var converter = new EntityConverter(tokens, rewriter);
-
-				converter.visit(parser.compilationUnit());
-				if (converter.entityName != null) {
-					entityNames.add(converter.entityName);
-					try (PrintWriter out = new PrintWriter(file.toFile())) {
-						out.print(rewriter.getText());
-					}
-					changedFiles.add(file);
-				}
-			}
-			catch (IOException exception) {
-				logger.severe(exception.toString());
+			converter.visit(source.getCompilationUnit());
+			if (converter.entityName != null) {
+				entityNames.add(converter.entityName);
+				FileHelper.writeSource(file, rewriter.getText());
+				return true;
 			}
+			return false;
 		});
-
-		return changedFiles;
 	}
 
 	/**
@@ -1,12 +1,9 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -23,43 +20,29 @@ public class EntityChangeEntityReferenceToPK extends GitCommit {
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		ArrayList<Path> changedFiles = new ArrayList<>();
-
-		Files.list(Path.of(targetFolder, "src\\main\\java\\entities")).forEach(file -> {
-			try {
-				if (file.toString().endsWith("EntityManager.java"))
-					return;
-
-				CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(file)));
-				JavaParser parser = new JavaParser(tokens);
-				TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(tokens);
-				var converter = new FieldDefinitionConverter(rewriter, pkMap);
-
-				converter.visit(parser.compilationUnit());
-				if (rewriter.hasChanges()) {
-					try (PrintWriter out = new PrintWriter(file.toFile())) {
-						out.print(rewriter.getText());
-					}
-					changedFiles.add(file);
+		return editFiles(Files.list(Path.of(targetFolder, "src", "main", "java", "entities")), file -> {
+			if (file.toString().endsWith("EntityManager.java"))
+				return false;
 
+			ParsedSource source = ParsedSourceCache.parse(file);
+			TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(source.getTokens());
+			var converter = new FieldDefinitionConverter(rewriter, pkMap);
 
-					tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(file)));
-					parser = new JavaParser(tokens);
-					rewriter = new TokenStreamRewriter2(tokens);
+			converter.visit(source.getCompilationUnit());
+			if (rewriter.hasChanges() == false)
+				return false;
 
-					var c2 = new FieldGetterSetterConverter(converter.changedFields, rewriter);
-					c2.visit(parser.compilationUnit());
-					try (PrintWriter out = new PrintWriter(file.toFile())) {
-						out.print(rewriter.getText());
-					}
-				}
-			}
-			catch (IOException exception) {
-				logger.severe(exception.toString());
-			}
-		});
+			FileHelper.writeSource(file, rewriter.getText());
+
+
+			source = ParsedSourceCache.parse(file);
+			rewriter = new TokenStreamRewriter2(source.getTokens());
 
-		return changedFiles;
+			var c2 = new FieldGetterSetterConverter(converter.changedFields, converter.pkTypes, rewriter);
+			c2.visit(source.getCompilationUnit());
+			FileHelper.writeSource(file, rewriter.getText());
+			return true;
+		});
 	}
 
 	public static class FieldDefinitionConverter extends ImportsCollector<Object> {
@@ -69,6 +52,11 @@ public class EntityChangeEntityReferenceToPK extends GitCommit {
 		 * original field names, is list
 		 */
 		public HashMap<String, Boolean> changedFields = new HashMap<>();
+		/**
+		 * original field names, the reference type of the PK of the referenced entity. Genson reads the PKs back as
+		 * this type, not as Long.
+		 */
+		public HashMap<String, String> pkTypes = new HashMap<>();
 
 		public FieldDefinitionConverter(TokenStreamRewriter rewriter, List<FieldDefinition> pkMap) {
 			super(rewriter);
@@ -108,23 +96,27 @@ public class EntityChangeEntityReferenceToPK extends GitCommit {
 					var variableDeclarator = fieldDeclaration.variableDeclarators().variableDeclarator(0);
 					String fieldName = variableDeclarator.variableDeclaratorId().getText();
 					if (this.pkMap.stream().anyMatch(s -> s.ClassName.equals(typeStr)) && fieldName.endsWith("PK") == false) {
-//						var d = this.pkMap.stream().filter(s -> s.ClassName.equals(typeStr)).findAny().get();
-						rewriter.insertBefore(ctx.start, "@JsonProperty\n\t" + String.format("private Object %sPK;", fieldName) + "\n\t");
+						var d = this.pkMap.stream().filter(s -> s.ClassName.equals(typeStr)).findAny().get();
+						String pkType = castToReferenceType(d.VariableType);
+						rewriter.insertBefore(ctx.start, "@JsonProperty\n\t" + String.format("private %s %sPK;", pkType, fieldName) + "\n\t");
 
 						super.newImports.add("com.owlike.genson.annotation.*");
 
 						changedFields.put(fieldName, false);
+						pkTypes.put(fieldName, pkType);
 						return null;
 					} else {
 						var pattern = Pattern.compile("List<([\\w\\d_]+)>");
 						var m = pattern.matcher(typeStr);
 						if (m.matches() && this.pkMap.stream().anyMatch(s -> s.ClassName.equals(m.group(1))) && fieldName.endsWith("PKs") == false) {
-//							var d = this.pkMap.stream().filter(s -> s.ClassName.equals(m.group(1))).findAny().get();
+							var d = this.pkMap.stream().filter(s -> s.ClassName.equals(m.group(1))).findAny().get();
+							String pkType = castToReferenceType(d.VariableType);
 
-							rewriter.insertBefore(ctx.start, "@JsonProperty\n\t" + String.format("private List<Object> %sPKs = new LinkedList<>();", fieldName) + "\n\t");
+							rewriter.insertBefore(ctx.start, "@JsonProperty\n\t" + String.format("private List<%s> %sPKs = new LinkedList<>();", pkType, fieldName) + "\n\t");
 							super.newImports.add("com.owlike.genson.annotation.*");
 
 							changedFields.put(fieldName, true);
+							pkTypes.put(fieldName, pkType);
 							return null;
 						}
 					}
@@ -144,10 +136,15 @@ public class EntityChangeEntityReferenceToPK extends GitCommit {
 		 * old name, is list
 		 */
 		private final HashMap<String, Boolean> changedFields;
+		/**
+		 * old name, PK type
+		 */
+		private final HashMap<String, String> pkTypes;
 
-		public FieldGetterSetterConverter(HashMap<String, Boolean> changedFields, TokenStreamRewriter rewriter) {
+		public FieldGetterSetterConverter(HashMap<String, Boolean> changedFields, HashMap<String, String> pkTypes, TokenStreamRewriter rewriter) {
 			super(rewriter);
 			this.changedFields = changedFields;
+			this.pkTypes = pkTypes;
 		}
 
 		@Override
@@ -185,15 +182,15 @@ public class EntityChangeEntityReferenceToPK extends GitCommit {
 				if (m2.matches()) {
 					String entityType = m2.group(1);
 
+					// The field may hold the list made by the constructor, also after deserializing.
 					var lines = new ArrayList<>(Arrays.asList(
-							"if (%1$s == null)",
-							"\t%1$s = %1$sPKs.stream().map(EntityManager::get%2$sByPK).collect(Collectors.toList());",
+							"if (%1$s instanceof LazyReferenceList == false)",
+							"\t%1$s = new LazyReferenceList<>(this, %1$sPKs, %2$s.class, EntityManager::get%2$sByPKs, %2$s::getPK);",
 							"return %1$s;"));
 					FormatHelper.increaseIndent(lines, 2);
 
 					rewriter.replace(ctx.methodBody().start, ctx.methodBody().stop,
 							"{\n" + String.format(String.join("\n", lines), item.get(), entityType) + "\n\t}");
-					super.newImports.add("java.util.stream.*");
 				} else {
 					var lines = new ArrayList<>(Arrays.asList(
 							"if (%1$s == null)",
@@ -209,19 +206,13 @@ public class EntityChangeEntityReferenceToPK extends GitCommit {
 				var parameter = ctx.formalParameters().formalParameterList().formalParameter(0).variableDeclaratorId().IDENTIFIER().getText();
 
 				rewriter.insertBefore(ctx.methodBody().stop,
-						"\t" + String.format("this.%sPK = %s.getPK();", item.get(), parameter) + "\n\t");
+						"\t" + String.format("this.%sPK = (%s) %s.getPK();", item.get(), pkTypes.get(item.get()), parameter) + "\n\t");
 			} else if (m.group(1).equals("add")) {
-				var parameter = ctx.formalParameters().formalParameterList().formalParameter(0).variableDeclaratorId().IDENTIFIER().getText();
-
-				//get%1$s() is to initialize the fields.
-				rewriter.insertAfter(ctx.methodBody().start,
-						"\n\t\t" + String.format("get%1$s();\n\t\tthis.%1$sPKs.add(%2$s.getPK());", item.get(), parameter));
+				//get%1$s() is to initialize the fields. Adding to the list adds the PK.
+				rewriter.insertAfter(ctx.methodBody().start, "\n\t\t" + String.format("get%1$s();", item.get()));
 
 			} else if (m.group(1).equals("delete")) {
-				var parameter = ctx.formalParameters().formalParameterList().formalParameter(0).variableDeclaratorId().IDENTIFIER().getText();
-
-				rewriter.insertAfter(ctx.methodBody().start,
-						"\n\t\t" + String.format("get%1$s();\n\t\tthis.%1$sPKs.remove(%2$s.getPK());", item.get(), parameter));
+				rewriter.insertAfter(ctx.methodBody().start, "\n\t\t" + String.format("get%1$s();", item.get()));
 			}
 
 			return false;
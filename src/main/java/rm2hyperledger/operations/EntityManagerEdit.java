@@ -0,0 +1,17 @@
+package rm2hyperledger.operations;
+
+import org.antlr.v4.runtime.TokenStreamRewriter;
+import rm2hyperledger.ParsedSource;
+
+/**
+ * A step that edits EntityManager.java, so that {@link FusedEntityManager} can run it together with the other steps
+ * on one parse of the file.
+ */
+public interface EntityManagerEdit {
+	String getCommitMessage();
+
+	/**
+	 * Record the edits of EntityManager.java with the rewriter, without writing the file.
+	 */
+	void editEntityManager(ParsedSource source, TokenStreamRewriter rewriter);
+}
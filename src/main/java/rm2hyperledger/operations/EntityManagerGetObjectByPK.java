@@ -1,65 +1,109 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
-public class EntityManagerGetObjectByPK extends GitCommit {
+public class EntityManagerGetObjectByPK extends GitCommit implements EntityManagerEdit {
 	private final Set<String> entities;
+	private final GeneratorOptions options;
 
-	public EntityManagerGetObjectByPK(String targetFolder, Set<String> entities) {
+	public EntityManagerGetObjectByPK(String targetFolder, Set<String> entities, GeneratorOptions options) {
 		super("For all entity types, add getXxxByPK to EntityManager", targetFolder);
 		this.entities = entities;
+		this.options = options;
 	}
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		Path entityManagerFileName = Paths.get(targetFolder, "src\\main\\java\\entities\\EntityManager.java");
-		CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(entityManagerFileName)));
+		Path entityManagerFileName = Paths.get(targetFolder, "src", "main", "java", "entities", "EntityManager.java");
+		if (isSelected(entityManagerFileName) == false)
+			return new ArrayList<>();
 
-		JavaParser parser = new JavaParser(tokens);
-		TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
+		ParsedSource source = ParsedSourceCache.parse(entityManagerFileName);
+		TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
 
-		GetObjectByPKAdder converter = new GetObjectByPKAdder(rewriter, entities);
-		converter.visit(parser.compilationUnit());
-		try (PrintWriter out = new PrintWriter(entityManagerFileName.toFile())) {
-			out.print(rewriter.getText());
-		}
+		editEntityManager(source, rewriter);
+		FileHelper.writeSource(entityManagerFileName, rewriter.getText());
 
 		ArrayList<Path> paths = new ArrayList<>();
 		paths.add(entityManagerFileName);
 		return paths;
 	}
 
+	@Override
+	public void editEntityManager(ParsedSource source, TokenStreamRewriter rewriter) {
+		GetObjectByPKAdder converter = new GetObjectByPKAdder(rewriter, entities, options.storageLayout);
+		converter.visit(source.getCompilationUnit());
+	}
+
 	static class GetObjectByPKAdder extends ImportsCollector<Object> {
 
 		private final TreeSet<String> entities;
+		private final GeneratorOptions.StorageLayout storageLayout;
 
-		protected GetObjectByPKAdder(TokenStreamRewriter rewriter, Set<String> entities) {
+		protected GetObjectByPKAdder(TokenStreamRewriter rewriter, Set<String> entities, GeneratorOptions.StorageLayout storageLayout) {
 			super(rewriter);
 			this.entities = new TreeSet<>(entities);
+			this.storageLayout = storageLayout;
 		}
 
-		private static String getTemplate() {
-			var s = new String[]{"public static %1$s get%1$sByPK(Object pk) {",
+		/**
+		 * get%1$sByPKs looks up a list of PKs, as the reference lists do, with find%1$s, like get%1$sByPK. A PK
+		 * repeated in the list is looked up once, and an empty list is not looked up.
+		 * <p>
+		 * find%1$s looks up a PK in the index of the loaded list of the type. With the table layout, the list is one
+		 * state, which is read once in a transaction. With the per-key layout, each instance is a state, so find%1$s
+		 * reads the list only if it is loaded anyway, and otherwise only the state of the PK, see readInstance.
+		 */
+		private String getTemplate() {
+			var s = new ArrayList<>(Arrays.asList("public static %1$s get%1$sByPK(Object pk) {",
 					"\tif (pk == null)",
 					"\t\treturn null;",
-					"\tfor (var i : EntityManager.getAllInstancesOf(%1$s.class)) {",
-					"\t\tif (Objects.equals(i.getPK(), pk))",
-					"\t\t\treturn i;",
+					"\treturn find%1$s(pk);",
+					"}",
+					"",
+					"public static List<%1$s> get%1$sByPKs(Collection<Object> pks) {",
+					"\tList<%1$s> list = new ArrayList<>(pks.size());",
+					"\tif (pks.isEmpty())",
+					"\t\treturn list;",
+					"\tMap<Object, %1$s> found = new HashMap<>();",
+					"\tfor (Object pk : new LinkedHashSet<>(pks)) {",
+					"\t\tif (pk != null)",
+					"\t\t\tfound.put(pk, find%1$s(pk));",
+					"\t}",
+					"\tfor (Object pk : pks)",
+					"\t\tlist.add(pk == null ? null : found.get(pk));",
+					"\treturn list;",
+					"}",
+					"",
+					"private static %1$s find%1$s(Object pk) {"));
+			if (storageLayout == GeneratorOptions.StorageLayout.PER_KEY)
+				s.addAll(Arrays.asList(
+						"\tif (loaded.contains(\"%1$s\") == false)",
+						"\t\treturn readInstance(\"%1$s\", pk, %1$s.class);"));
+			s.addAll(Arrays.asList(
+					"\treturn (%1$s) get%1$sIndex().get(pk);",
+					"}",
+					"",
+					"private static Map<Object, Object> get%1$sIndex() {",
+					"\tMap<Object, Object> index = pkIndex.get(%1$s.class);",
+					"\tif (index == null) {",
+					"\t\tindex = new HashMap<>();",
+					"\t\tfor (var i : EntityManager.getAllInstancesOf(%1$s.class))",
+					"\t\t\tindex.putIfAbsent(i.getPK(), i);",
+					"\t\tpkIndex.put(%1$s.class, index);",
 					"\t}",
-					"\treturn null;",
-					"}"};
+					"\treturn index;",
+					"}"));
 			FormatHelper.increaseIndent(s, 1);
 
 			return String.join("\n", s);
@@ -1,20 +1,18 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.AddClassMemberVisitor;
+import rm2hyperledger.FileHelper;
 import rm2hyperledger.GitCommit;
-import rm2hyperledger.JavaLexer;
-import rm2hyperledger.JavaParser;
+import rm2hyperledger.ParsedSource;
+import rm2hyperledger.ParsedSourceCache;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 
-public class EntityManagerRandomMethods extends GitCommit {
+public class EntityManagerRandomMethods extends GitCommit implements EntityManagerEdit {
 
 	public EntityManagerRandomMethods(String targetFolder) {
 		super("Add getRandom() and getGuid() to EntityManager", targetFolder);
@@ -22,12 +20,23 @@ public class EntityManagerRandomMethods extends GitCommit {
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		Path entityManagerFileName = Paths.get(targetFolder, "src\\main\\java\\entities\\EntityManager.java");
-		CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(entityManagerFileName)));
+		Path entityManagerFileName = Paths.get(targetFolder, "src", "main", "java", "entities", "EntityManager.java");
+		if (isSelected(entityManagerFileName) == false)
+			return new ArrayList<>();
 
-		JavaParser parser = new JavaParser(tokens);
-		TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
+		ParsedSource source = ParsedSourceCache.parse(entityManagerFileName);
+		TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
 
+		editEntityManager(source, rewriter);
+		FileHelper.writeSource(entityManagerFileName, rewriter.getText());
+
+		ArrayList<Path> paths = new ArrayList<>();
+		paths.add(entityManagerFileName);
+		return paths;
+	}
+
+	@Override
+	public void editEntityManager(ParsedSource source, TokenStreamRewriter rewriter) {
 		var member = new String[]{
 				"",
 				"private static java.util.Random random;",
@@ -48,14 +57,7 @@ public class EntityManagerRandomMethods extends GitCommit {
 				"}"
 		};
 
-		new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.End, member, "java.util.*", "java.io.*").visit(parser.compilationUnit());
-		try (PrintWriter out = new PrintWriter(entityManagerFileName.toFile())) {
-			out.print(rewriter.getText());
-		}
-
-		ArrayList<Path> paths = new ArrayList<>();
-		paths.add(entityManagerFileName);
-		return paths;
+		new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.End, member, "java.util.*", "java.io.*").visit(source.getCompilationUnit());
 	}
 
 }
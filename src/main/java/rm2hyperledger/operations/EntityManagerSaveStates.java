@@ -1,57 +1,70 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class EntityManagerSaveStates extends GitCommit {
+public class EntityManagerSaveStates extends GitCommit implements EntityManagerEdit {
+	private final GeneratorOptions options;
 
-
-	public EntityManagerSaveStates(String targetFolder) {
+	public EntityManagerSaveStates(String targetFolder, GeneratorOptions options) {
 		super("Add/delete objects need to save states", targetFolder);
+		this.options = options;
 	}
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		Path entityManagerFileName = Paths.get(targetFolder, "src\\main\\java\\entities\\EntityManager.java");
-		CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(entityManagerFileName)));
+		Path entityManagerFileName = Paths.get(targetFolder, "src", "main", "java", "entities", "EntityManager.java");
+		if (isSelected(entityManagerFileName) == false)
+			return new ArrayList<>();
 
-		JavaParser parser = new JavaParser(tokens);
-		TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
+		ParsedSource source = ParsedSourceCache.parse(entityManagerFileName);
+		TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
 
-		ObjectMethodsConverter converter = new ObjectMethodsConverter(rewriter);
-		converter.visit(parser.compilationUnit());
-		try (PrintWriter out = new PrintWriter(entityManagerFileName.toFile())) {
-			out.print(rewriter.getText());
-		}
+		editEntityManager(source, rewriter);
+		FileHelper.writeSource(entityManagerFileName, rewriter.getText());
 
 		ArrayList<Path> paths = new ArrayList<>();
 		paths.add(entityManagerFileName);
 		return paths;
 	}
 
+	@Override
+	public void editEntityManager(ParsedSource source, TokenStreamRewriter rewriter) {
+		ObjectMethodsConverter converter = new ObjectMethodsConverter(rewriter, options);
+		converter.visit(source.getCompilationUnit());
+	}
+
 
 	static class ObjectMethodsConverter extends JavaParserBaseVisitor<Object> {
 		final static Pattern addObjectMethodName = Pattern.compile("add(\\w+)Object");
 		final static Pattern deleteObjectMethodName = Pattern.compile("delete(\\w+)Object");
 
 		final TokenStreamRewriter rewriter;
+		final GeneratorOptions.StorageLayout storageLayout;
+		final boolean writeBack;
+		final GeneratorOptions.StateFormat stateFormat;
 		boolean hasLoadList = false;
 
-		public ObjectMethodsConverter(TokenStreamRewriter rewriter) {
+		public ObjectMethodsConverter(TokenStreamRewriter rewriter, GeneratorOptions options) {
 			this.rewriter = rewriter;
+			this.storageLayout = options.storageLayout;
+			this.writeBack = options.writeBack;
+			this.stateFormat = options.stateFormat;
+			if (storageLayout == GeneratorOptions.StorageLayout.PER_KEY) {
+				imports.add("org.hyperledger.fabric.shim.ledger.KeyValue");
+				imports.add("org.hyperledger.fabric.shim.ledger.QueryResultsIterator");
+			}
 		}
 
 		@Override
@@ -86,31 +99,49 @@ public class EntityManagerSaveStates extends GitCommit {
 			ArrayList<String> lines = new ArrayList<>(Arrays.asList(
 			  String.format("	List<%1$s> list = loadList(%1$s.class);", type),
 							"	if (list.add(o)) {",
-							"		String json = genson.serialize(list);",
-			 String.format("		stub.putStringState(\"%s\", json);", type),
-							"		return true;",
-							"	} else",
-							"		return false;",
-							"}"));
+			  String.format("		Map<Object, Object> index = pkIndex.get(%s.class);", type),
+							"		if (index != null)",
+							"			index.putIfAbsent(o.getPK(), o);"));
 			// @formatter:on
-			FormatHelper.increaseIndent(lines, 1);
-			lines.add(0, "{");
-
-			rewriter.replace(methodBody.start, methodBody.stop, String.join("\n", lines));
+			if (storageLayout == GeneratorOptions.StorageLayout.PER_KEY) {
+				// Only the added object is written.
+				lines.add(String.format("		String key = getKey(\"%s\", o.getPK());", type));
+				lines.add("		putState(key, o);");
+				lines.add("		savedKeys.put(o, key);");
+			} else
+				lines.add(String.format("		putState(\"%s\", list);", type));
+			lines.addAll(Arrays.asList(
+					"		return true;",
+					"	} else",
+					"		return false;",
+					"}"));
+			replaceMethodBody(methodBody, lines);
 		}
 
 		private void rewriteDeleteObject(JavaParser.MethodBodyContext methodBody, String type) {
 			// @formatter:off
 			ArrayList<String> lines = new ArrayList<>(Arrays.asList(
-	  String.format("	List<%1$s> list = loadList(%1$s.class);", type),
-					"	if (list.remove(o)) {",
-					"		String json = genson.serialize(list);",
-	  String.format("		stub.putStringState(\"%s\", json);", type),
+			  String.format("	List<%1$s> list = loadList(%1$s.class);", type),
+							"	if (list.remove(o)) {",
+			  String.format("		Map<Object, Object> index = pkIndex.get(%s.class);", type),
+							"		if (index != null)",
+							"			index.remove(o.getPK(), o);"));
+			// @formatter:on
+			if (storageLayout == GeneratorOptions.StorageLayout.PER_KEY) {
+				// The PK of the object may have changed since it was stored.
+				lines.add("		deleteState(savedKeys.remove(o));");
+				lines.add("		savedStates.remove(o);");
+			} else
+				lines.add(String.format("		putState(\"%s\", list);", type));
+			lines.addAll(Arrays.asList(
 					"		return true;",
 					"	} else",
 					"		return false;",
 					"}"));
-			// @formatter:on
+			replaceMethodBody(methodBody, lines);
+		}
+
+		private void replaceMethodBody(JavaParser.MethodBodyContext methodBody, ArrayList<String> lines) {
 			FormatHelper.increaseIndent(lines, 1);
 			lines.add(0, "{");
 
@@ -119,7 +150,9 @@ public class EntityManagerSaveStates extends GitCommit {
 
 		HashSet<String> imports = new HashSet<>(Arrays.asList(
 				"com.owlike.genson.Genson",
-				"org.hyperledger.fabric.shim.ChaincodeStub"));
+				"converters.EntityConverters",
+				"org.hyperledger.fabric.shim.ChaincodeStub",
+				"java.util.function.Function"));
 
 
 		@Override
@@ -144,17 +177,41 @@ public class EntityManagerSaveStates extends GitCommit {
 		public Object visitClassBody(JavaParser.ClassBodyContext ctx) {
 			super.visitClassBody(ctx);
 
-			var fields = Arrays.asList("private static final Genson genson = new Genson();",
-					"public static ChaincodeStub stub;");
+			List<String> fields = Arrays.asList("private static final Genson genson = EntityConverters.genson;",
+					"public static ChaincodeStub stub;",
+					"// PK to instance of each entity type, built by getXxxByPK and cleared by setStub.\n\tprivate static final Map<Class<?>, Map<Object, Object>> pkIndex = new HashMap<>();",
+					"// The JSON last read or written for each state, by the list or instance stored in it. States whose JSON is\n\t// unchanged are not written again.\n\tprivate static final Map<Object, String> savedStates = new IdentityHashMap<>();",
+					"// Types loaded in this transaction, or in the read-only transactions whose lists it reuses.\n\tprivate static final Set<String> loaded = new HashSet<>();",
+					"// Consecutive read-only transactions share the loaded lists while their states are unchanged.\n\tprivate static boolean readOnly = false;",
+					"// States of this transaction served from the cache or deserialized.\n\tprivate static long cacheHits = 0;\n\tprivate static long cacheMisses = 0;\n\tprivate static long bytesDeserialized = 0;");
+			if (storageLayout == GeneratorOptions.StorageLayout.PER_KEY) {
+				fields = new ArrayList<>(fields);
+				fields.add("// The key each instance was loaded from or last written to. saveXxxModified deletes it when the PK of\n\t// the instance changed.\n\tprivate static final Map<Object, String> savedKeys = new IdentityHashMap<>();");
+				fields.add("// Instances read by their key in this transaction, of types whose list is not loaded, or null if the key\n\t// has no state. loadList takes them over, so that an entity is one instance in a transaction. A read-only\n\t// transaction reuses them with the lists.\n\tprivate static final Map<String, Object> keyInstances = new HashMap<>();");
+			}
+			if (writeBack) {
+				fields = new ArrayList<>(fields);
+				fields.add("// States written by this transaction, by key. endTransaction serializes each of them once.\n\tprivate static final Map<String, Object> pendingStates = new LinkedHashMap<>();");
+				fields.add("private static final Object DELETED = new Object();");
+				fields.add("// PK fields of contracts written by this transaction, by key. A PK may be the same instance as the PK of\n\t// another field, so they are not tracked in savedStates.\n\tprivate static final Map<String, Object> pendingFieldStates = new LinkedHashMap<>();");
+			}
 			FormatHelper.increaseIndent(fields, 1);
 
 			rewriter.insertAfter(ctx.start, "\n\n" + String.join("\n\n", fields));
 
 			if (hasLoadList == false) {
-				String line = String.join("\n", loadList) + "\n";
+				List<String> lines = new ArrayList<>(loadList);
+				lines.add("");
+				lines.addAll(getIsUnchanged());
+				lines.add("");
+				lines.addAll(storageLayout == GeneratorOptions.StorageLayout.PER_KEY ? perKeyMethods : tableMethods);
+				String line = String.join("\n", lines) + "\n";
 				rewriter.insertBefore(ctx.stop, line);
 			}
 
+			rewriter.insertBefore(ctx.stop, "\n" + String.join("\n", getStateMethods()) + "\n");
+			rewriter.insertBefore(ctx.stop, "\n" + String.join("\n", getTransactionMethods()) + "\n");
+
 			var getAllInstancesOf = Arrays.asList("public static <T> List<T> getAllInstancesOf(Class<T> clazz) {",
 					"\tList<T> list = loadList(clazz);",
 					"\treturn list;",
@@ -180,23 +237,269 @@ public class EntityManagerSaveStates extends GitCommit {
 			return null;
 		}
 
+		/**
+		 * readList reads the instances of a type in the storage layout, see {@link #tableMethods} and
+		 * {@link #perKeyMethods}.
+		 */
 		private static ArrayList<String> loadList = new ArrayList<>(Arrays.asList(
 				"	private static <T> List<T> loadList(Class<T> clazz) {",
 				"		String key = clazz.getSimpleName();",
 				"		List<T> list = AllInstance.get(key);",
-				"		if (list == null || list.size() == 0) {",
-				"			String json = stub.getStringState(key);",
-				"			System.out.printf(\"loadList %s: %s\\n\", key, json);",
-				"			if (json != null && Objects.equals(json, \"\") == false)",
-				"				list = GensonHelper.deserializeList(genson, json, clazz);",
-				"			else",
-				"				list = new LinkedList<>();",
-				"			AllInstance.put(key, list);",
+				"		if (loaded.add(key) == false) {",
+				"			cacheHits++;",
+				"			return list;",
 				"		}",
+				"		if (list != null)",
+				"			savedStates.remove(list);",
+				"		list = readList(key, clazz);",
+				"		AllInstance.put(key, list);",
 				"		return list;",
 				"	}"
 		));
 
+		/**
+		 * setStub reuses the lists of the last read-only transaction only if the states of all of them are unchanged.
+		 * The instances of the lists keep the instances read by their key as their references, so the states of
+		 * these are checked too.
+		 */
+		private List<String> getIsUnchanged() {
+			ArrayList<String> lines = new ArrayList<>(Arrays.asList(
+					"	private static boolean isUnchanged() {",
+					"		for (String key : loaded) {",
+					"			if (isUnchanged(key, AllInstance.get(key)) == false)",
+					"				return false;",
+					"		}"));
+			if (storageLayout == GeneratorOptions.StorageLayout.PER_KEY)
+				lines.addAll(Arrays.asList(
+						"		for (Map.Entry<String, Object> entry : keyInstances.entrySet()) {",
+						"			String state = readState(entry.getKey());",
+						"			if (Objects.equals(state == null || state.isEmpty() ? null : state, savedStates.get(entry.getValue())) == false)",
+						"				return false;",
+						"		}"));
+			lines.addAll(Arrays.asList(
+					"		return true;",
+					"	}"));
+			return lines;
+		}
+
+		/**
+		 * The list of each type is stored under the name of the type.
+		 */
+		private static ArrayList<String> tableMethods = new ArrayList<>(Arrays.asList(
+				"	private static <T> List<T> readList(String type, Class<T> clazz) {",
+				"		String state = readState(type);",
+				"		cacheMisses++;",
+				"		if (state == null || state.isEmpty())",
+				"			return new LinkedList<>();",
+				"		List<T> list = deserializeList(state, clazz);",
+				"		savedStates.put(list, state);",
+				"		bytesDeserialized += state.length();",
+				"		return list;",
+				"	}",
+				"",
+				"	private static boolean isUnchanged(String type, List<?> list) {",
+				"		return Objects.equals(readState(type), savedStates.get(list));",
+				"	}",
+				"",
+				"	private static <T> void putList(String type, List<T> list, Function<T, Object> getPK) {",
+				"		putState(type, list);",
+				"	}"
+		));
+
+		/**
+		 * Each instance is stored under the composite key of its type and PK. The type is the one the instance is
+		 * loaded as, even if the instance is of a subclass.
+		 */
+		private static ArrayList<String> perKeyMethods = new ArrayList<>(Arrays.asList(
+				"	private static <T> List<T> readList(String type, Class<T> clazz) {",
+				"		List<T> list = new LinkedList<>();",
+				"		try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(stub.createCompositeKey(type))) {",
+				"			for (KeyValue result : results) {",
+				"				Object known = keyInstances.remove(result.getKey());",
+				"				if (known != null) {",
+				"					list.add(clazz.cast(known));",
+				"					continue;",
+				"				}",
+				"				String state = readState(result);",
+				"				T o = deserialize(state, clazz);",
+				"				cacheMisses++;",
+				"				bytesDeserialized += state.length();",
+				"				list.add(o);",
+				"				savedStates.put(o, state);",
+				"				savedKeys.put(o, result.getKey());",
+				"			}",
+				"		}",
+				"		catch (Exception e) {",
+				"			throw new RuntimeException(e);",
+				"		}",
+				"		return list;",
+				"	}",
+				"",
+				"	// Each key of the type must hold the state saved for the instance of the list with that key.",
+				"	private static boolean isUnchanged(String type, List<?> list) {",
+				"		Map<String, String> states = new HashMap<>();",
+				"		for (Object o : list)",
+				"			states.put(savedKeys.get(o), savedStates.get(o));",
+				"		try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(stub.createCompositeKey(type))) {",
+				"			for (KeyValue result : results) {",
+				"				if (readState(result).equals(states.remove(result.getKey())) == false)",
+				"					return false;",
+				"			}",
+				"		}",
+				"		catch (Exception e) {",
+				"			throw new RuntimeException(e);",
+				"		}",
+				"		return states.isEmpty();",
+				"	}",
+				"",
+				"	// An instance whose PK changed leaves its old key, which is deleted unless another instance moved to it.",
+				"	private static <T> void putList(String type, List<T> list, Function<T, Object> getPK) {",
+				"		Set<String> keys = new HashSet<>();",
+				"		List<String> oldKeys = new ArrayList<>();",
+				"		for (T o : list) {",
+				"			String key = getKey(type, getPK.apply(o));",
+				"			keys.add(key);",
+				"			String oldKey = savedKeys.put(o, key);",
+				"			if (oldKey != null && oldKey.equals(key) == false)",
+				"				oldKeys.add(oldKey);",
+				"			putState(key, o);",
+				"		}",
+				"		for (String oldKey : oldKeys) {",
+				"			if (keys.contains(oldKey) == false)",
+				"				deleteState(oldKey);",
+				"		}",
+				"	}",
+				"",
+				"	// Read the instance of a PK without reading the other instances of the type.",
+				"	private static <T> T readInstance(String type, Object pk, Class<T> clazz) {",
+				"		String key = getKey(type, pk);",
+				"		if (keyInstances.containsKey(key))",
+				"			return clazz.cast(keyInstances.get(key));",
+				"		String state = readState(key);",
+				"		T o = null;",
+				"		if (state != null && state.isEmpty() == false) {",
+				"			o = deserialize(state, clazz);",
+				"			cacheMisses++;",
+				"			bytesDeserialized += state.length();",
+				"			savedStates.put(o, state);",
+				"			savedKeys.put(o, key);",
+				"		}",
+				"		keyInstances.put(key, o);",
+				"		return o;",
+				"	}",
+				"",
+				"	private static String getKey(String type, Object pk) {",
+				"		return stub.createCompositeKey(type, String.valueOf(pk)).toString();",
+				"	}"
+		));
 
+		/**
+		 * The methods that read, write and convert states in the state format. A binary state is held as a String of
+		 * its bytes, see BinaryState.
+		 */
+		private List<String> getStateMethods() {
+			boolean binary = stateFormat == GeneratorOptions.StateFormat.BINARY;
+			ArrayList<String> lines = new ArrayList<>(Arrays.asList(
+					"	private static String readState(String key) {",
+					"		return " + (binary ? "BinaryState.fromBytes(stub.getState(key))" : "stub.getStringState(key)") + ";",
+					"	}",
+					""));
+			if (storageLayout == GeneratorOptions.StorageLayout.PER_KEY)
+				lines.addAll(Arrays.asList(
+						"	private static String readState(KeyValue result) {",
+						"		return " + (binary ? "BinaryState.fromBytes(result.getValue())" : "result.getStringValue()") + ";",
+						"	}",
+						""));
+			lines.addAll(Arrays.asList(
+					"	private static void writeState(String key, String state) {",
+					"		" + (binary ? "stub.putState(key, BinaryState.toBytes(state))" : "stub.putStringState(key, state)") + ";",
+					"	}",
+					"",
+					"	private static String serialize(Object value) {",
+					"		return " + (binary ? "BinaryState.serialize(value)" : "genson.serialize(value)") + ";",
+					"	}",
+					"",
+					"	private static <T> T deserialize(String state, Class<T> clazz) {",
+					"		return " + (binary ? "BinaryState.deserialize(state, clazz)" : "genson.deserialize(state, clazz)") + ";",
+					"	}",
+					"",
+					"	private static <T> List<T> deserializeList(String state, Class<T> clazz) {",
+					"		return " + (binary ? "BinaryState.deserializeList(state, clazz)" : "GensonHelper.deserializeList(genson, state, clazz)") + ";",
+					"	}",
+					"",
+					"	// Serialize the value and write it, unless it is unchanged since it was last read or written.",
+					"	private static void saveState(String key, Object value) {",
+					"		String state = serialize(value);",
+					"		if (state.equals(savedStates.get(value)))",
+					"			return;",
+					"		writeState(key, state);",
+					"		savedStates.put(value, state);",
+					"	}"));
+			return lines;
+		}
+
+		/**
+		 * putState, deleteState and putFieldState write at once, or when the transaction ends in write-back mode. The
+		 * @Transaction wrappers call endTransaction before they return.
+		 */
+		private List<String> getTransactionMethods() {
+			ArrayList<String> lines = new ArrayList<>();
+			if (writeBack)
+				lines.addAll(Arrays.asList(
+						"	private static void putState(String key, Object value) {",
+						"		pendingStates.put(key, value);",
+						"	}",
+						"",
+						"	private static void deleteState(String key) {",
+						"		pendingStates.put(key, DELETED);",
+						"	}",
+						"",
+						"	public static void putFieldState(String key, Object value) {",
+						"		pendingFieldStates.put(key, value);",
+						"	}",
+						"",
+						"	public static void endTransaction() {",
+						"		for (var entry : pendingStates.entrySet()) {",
+						"			if (entry.getValue() == DELETED)",
+						"				stub.delState(entry.getKey());",
+						"			else",
+						"				saveState(entry.getKey(), entry.getValue());",
+						"		}",
+						"		pendingStates.clear();",
+						"		for (var entry : pendingFieldStates.entrySet())",
+						"			writeState(entry.getKey(), serialize(entry.getValue()));",
+						"		pendingFieldStates.clear();",
+						"	}"));
+			else
+				lines.addAll(Arrays.asList(
+						"	private static void putState(String key, Object value) {",
+						"		saveState(key, value);",
+						"	}",
+						"",
+						"	private static void deleteState(String key) {",
+						"		stub.delState(key);",
+						"	}",
+						"",
+						"	public static void putFieldState(String key, Object value) {",
+						"		writeState(key, serialize(value));",
+						"	}",
+						"",
+						"	public static void endTransaction() {",
+						"	}"));
+			lines.addAll(Arrays.asList(
+					"",
+					"	public static long getCacheHits() {",
+					"		return cacheHits;",
+					"	}",
+					"",
+					"	public static long getCacheMisses() {",
+					"		return cacheMisses;",
+					"	}",
+					"",
+					"	public static long getBytesDeserialized() {",
+					"		return bytesDeserialized;",
+					"	}"));
+			return lines;
+		}
 	}
 }
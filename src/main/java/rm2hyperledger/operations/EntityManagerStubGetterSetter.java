@@ -1,34 +1,45 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
 import rm2hyperledger.checkers.ModifierChecker;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-public class EntityManagerStubGetterSetter extends GitCommit {
-	public EntityManagerStubGetterSetter(String targetFolder) {
+public class EntityManagerStubGetterSetter extends GitCommit implements EntityManagerEdit {
+	private final GeneratorOptions options;
+
+	public EntityManagerStubGetterSetter(String targetFolder, GeneratorOptions options) {
 		super("Add getter and setter of stub to EntityManager", targetFolder);
+		this.options = options;
 	}
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		Path entityManagerFileName = Paths.get(targetFolder, "src\\main\\java\\entities\\EntityManager.java");
-		CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(entityManagerFileName)));
+		Path entityManagerFileName = Paths.get(targetFolder, "src", "main", "java", "entities", "EntityManager.java");
+		if (isSelected(entityManagerFileName) == false)
+			return new ArrayList<>();
+
+		ParsedSource source = ParsedSourceCache.parse(entityManagerFileName);
+		TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+
+		editEntityManager(source, rewriter);
+		FileHelper.writeSource(entityManagerFileName, rewriter.getText());
 
-		JavaParser parser = new JavaParser(tokens);
-		TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
+		ArrayList<Path> paths = new ArrayList<>();
+		paths.add(entityManagerFileName);
+		return paths;
+	}
 
+	@Override
+	public void editEntityManager(ParsedSource source, TokenStreamRewriter rewriter) {
 		var setterCollector = new SetterCollector();
-		setterCollector.visit(parser.compilationUnit());
+		setterCollector.visit(source.getCompilationUnit());
 
 		var part1 = setterCollector.lists.entrySet().stream().map(s -> String.format("\t%s = new LinkedList<>();", s.getKey()));
 
@@ -40,23 +51,43 @@ public class EntityManagerStubGetterSetter extends GitCommit {
 				"}",
 				"",
 				"public static void setStub(ChaincodeStub stub) {",
+				"\tsetStub(stub, false);",
+				"}",
+				"",
+				"public static void setStub(ChaincodeStub stub, boolean readOnly) {",
 				"\tEntityManager.stub = stub;",
 				"\trandom = null;",
-				""));
+				"\tpkIndex.clear();",
+				"\tLazyReferenceList.startTransaction();",
+				"\tcacheHits = 0;",
+				"\tcacheMisses = 0;",
+				"\tbytesDeserialized = 0;"));
+		if (options.writeBack) {
+			// Writes of a transaction that threw are dropped.
+			member.add("\tpendingStates.clear();");
+			member.add("\tpendingFieldStates.clear();");
+		}
+		member.addAll(Arrays.asList("",
+				"\t// The instances of the last read-only transaction refer to each other, so they are reused only if none of the",
+				"\t// states they were loaded from changed.",
+				"\tboolean reuse = readOnly && EntityManager.readOnly && isUnchanged();",
+				"\tEntityManager.readOnly = readOnly;",
+				"\tif (reuse)",
+				"\t\treturn;",
+				"",
+				"\tloaded.clear();",
+				"\tsavedStates.clear();"));
+		if (options.storageLayout == GeneratorOptions.StorageLayout.PER_KEY) {
+			member.add("\tsavedKeys.clear();");
+			member.add("\tkeyInstances.clear();");
+		}
+		member.add("");
 		member.addAll(part1.collect(Collectors.toList()));
 		member.add("");
 		member.addAll(part2.collect(Collectors.toList()));
 		member.add("}");
 
-		parser.reset();
-		new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.End, member.toArray(String[]::new)).visit(parser.compilationUnit());
-		try (PrintWriter out = new PrintWriter(entityManagerFileName.toFile())) {
-			out.print(rewriter.getText());
-		}
-
-		ArrayList<Path> paths = new ArrayList<>();
-		paths.add(entityManagerFileName);
-		return paths;
+		new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.End, member.toArray(String[]::new)).visit(source.getCompilationUnit());
 	}
 
 	static class SetterCollector extends JavaParserBaseVisitor<Object> {
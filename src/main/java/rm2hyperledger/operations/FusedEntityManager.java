@@ -0,0 +1,54 @@
+package rm2hyperledger.operations;
+
+import rm2hyperledger.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the steps that edit EntityManager.java on one parse of the file, and writes it once, instead of parsing and
+ * writing it again for every step. The file is the same as after running the steps one by one.
+ */
+public class FusedEntityManager extends GitCommit {
+	private final List<EntityManagerEdit> steps;
+	private final boolean commitSteps;
+
+	/**
+	 * @param steps       in the order they would run one by one
+	 * @param commitSteps commit the file after each step with the message of the step, instead of once
+	 */
+	public FusedEntityManager(String targetFolder, List<EntityManagerEdit> steps, boolean commitSteps) {
+		super(commitSteps ? steps.get(steps.size() - 1).getCommitMessage() : "Edit EntityManager in one pass", targetFolder);
+		this.steps = steps;
+		this.commitSteps = commitSteps;
+	}
+
+	@Override
+	protected ArrayList<Path> editCommitCore() throws IOException {
+		Path entityManagerFileName = Paths.get(targetFolder, "src", "main", "java", "entities", "EntityManager.java");
+		if (isSelected(entityManagerFileName) == false)
+			return new ArrayList<>();
+
+		ParsedSource source = ParsedSourceCache.parse(entityManagerFileName);
+		FusedRewriter rewriter = new FusedRewriter(source.getTokens());
+
+		ArrayList<Path> paths = new ArrayList<>();
+		paths.add(entityManagerFileName);
+		for (int i = 0; i < steps.size(); i++) {
+			FusedRewriter.Step step = rewriter.newStep();
+			steps.get(i).editEntityManager(source, step);
+			rewriter.apply(step);
+
+			if (commitSteps && i < steps.size() - 1) {
+				FileHelper.writeSource(entityManagerFileName, rewriter.getText());
+				commitStep(steps.get(i).getCommitMessage(), paths);
+			}
+		}
+
+		FileHelper.writeSource(entityManagerFileName, rewriter.getText());
+		return paths;
+	}
+}
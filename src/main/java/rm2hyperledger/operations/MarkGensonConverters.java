@@ -1,12 +1,9 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -21,35 +18,21 @@ public class MarkGensonConverters extends GitCommit {
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		Path folder = Path.of(targetFolder, "src\\main\\java\\entities");
+		Path folder = Path.of(targetFolder, "src", "main", "java", "entities");
 		assert Files.exists(folder);
 
-		ArrayList<Path> changedFiles = new ArrayList<>();
-		for (var entity : entityNames) {
-			Path file = Path.of(targetFolder, "src\\main\\java\\entities", entity + ".java");
-			try {
-				CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(file)));
+		return editFiles(entityNames.stream().sorted().map(entity -> Path.of(targetFolder, "src", "main", "java", "entities", entity + ".java")), file -> {
+			ParsedSource source = ParsedSourceCache.parse(file);
+			TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(source.getTokens());
+			var converter = new GetterSetterVisitor(rewriter);
 
-
-				JavaParser parser = new JavaParser(tokens);
-				TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(tokens);
-				var converter = new GetterSetterVisitor(rewriter);
-
-				converter.visit(parser.compilationUnit());
-				if (rewriter.hasChanges()) {
-					try (PrintWriter out = new PrintWriter(file.toFile())) {
-						out.print(rewriter.getText());
-					}
-					changedFiles.add(file);
-				}
+			converter.visit(source.getCompilationUnit());
+			if (rewriter.hasChanges()) {
+				FileHelper.writeSource(file, rewriter.getText());
+				return true;
 			}
-			catch (IOException exception) {
-				logger.severe(exception.toString());
-			}
-		}
-
-
-		return changedFiles;
+			return false;
+		});
 	}
 
 
@@ -1,22 +1,21 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-public class SaveModified extends GitCommit {
-	private final HashMap<String, List<String>> contractTransactions;
-	private final HashSet<String> entityNames;
+public class SaveModified extends GitCommit implements EntityManagerEdit {
+	private final Map<String, List<String>> contractTransactions;
+	private final Set<String> entityNames;
 
-	public SaveModified(String targetFolder, HashMap<String, List<String>> contractTransactions, HashSet<String> entityNames) {
+	private boolean editEntityManager = true;
+
+	public SaveModified(String targetFolder, Map<String, List<String>> contractTransactions, Set<String> entityNames) {
 		super("Call savedModified\n\n" +
 						"If a local variable or a field, of entity type, is modified in a contract, the changes must be saved back unless AddObject() or deleteObject() is called on it.",
 				targetFolder);
@@ -24,59 +23,65 @@ public class SaveModified extends GitCommit {
 		this.entityNames = entityNames;
 	}
 
+	/**
+	 * @param editEntityManager false if {@link FusedEntityManager} adds the saveXxxModified methods to EntityManager instead.
+	 */
+	public void setEditEntityManager(boolean editEntityManager) {
+		this.editEntityManager = editEntityManager;
+	}
+
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		ArrayList<Path> changedFiles = new ArrayList<>();
+		ArrayList<Path> changedFiles = editFiles(contractTransactions.keySet().stream().sorted().map(c -> Path.of(targetFolder, "src", "main", "java", "services", "impl", c + ".java")), file -> {
+			ParsedSource source = ParsedSourceCache.parse(file);
 
-		for (var entry : contractTransactions.entrySet()) {
-			var file = Path.of(targetFolder, "src\\main\\java\\services\\impl", entry.getKey() + ".java");
+			var entityFieldsCollector = new EntityFieldsCollector(entityNames);
+			entityFieldsCollector.visit(source.getCompilationUnit());
 
-			try {
-				CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(file)));
 
-				JavaParser parser = new JavaParser(tokens);
-
-				var entityFieldsCollector = new EntityFieldsCollector(entityNames);
-				entityFieldsCollector.visit(parser.compilationUnit());
-
-
-				TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(tokens);
-				var converter = new ModifiedVariablesCollector(entry.getValue(), entityNames, entityFieldsCollector.entityFields, rewriter);
-				parser.reset();
-				converter.visit(parser.compilationUnit());
-				if (rewriter.hasChanges()) {
-					try (PrintWriter out = new PrintWriter(file.toFile())) {
-						out.print(rewriter.getText());
-					}
-					changedFiles.add(file);
-				}
+			TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(source.getTokens());
+			var methods = contractTransactions.get(FileHelper.getFileNameWithoutExtension(file.getFileName().toString()));
+			var converter = new ModifiedVariablesCollector(methods, entityNames, entityFieldsCollector.entityFields, rewriter);
+			converter.visit(source.getCompilationUnit());
+			if (rewriter.hasChanges()) {
+				FileHelper.writeSource(file, rewriter.getText());
+				return true;
 			}
-			catch (IOException exception) {
-				logger.severe(exception.toString());
-			}
-		}
+			return false;
+		});
 
-		Path entityManagerPath = Path.of(targetFolder, "src\\main\\java\\entities\\EntityManager.java");
-		CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(entityManagerPath)));
-		JavaParser parser = new JavaParser(tokens);
-		TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(tokens);
-		var converter = new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.End,
-				new String[]{"",
-						"public static <T> boolean saveModified(Class<T> clazz) {",
-						"\tList<T> list = loadList(clazz);",
-						"\tString json = genson.serialize(list);",
-						"\tstub.putStringState(clazz.getSimpleName(), json);",
-						"\treturn true;",
-						"}"});
-		converter.visitCompilationUnit(parser.compilationUnit());
-		try (PrintWriter out = new PrintWriter(entityManagerPath.toFile())) {
-			out.print(rewriter.getText());
-		}
+		Path entityManagerPath = Path.of(targetFolder, "src", "main", "java", "entities", "EntityManager.java");
+		if (editEntityManager == false || isSelected(entityManagerPath) == false)
+			return changedFiles;
+
+		ParsedSource source = ParsedSourceCache.parse(entityManagerPath);
+		TokenStreamRewriter rewriter = new TokenStreamRewriter(source.getTokens());
+		editEntityManager(source, rewriter);
+		FileHelper.writeSource(entityManagerPath, rewriter.getText());
 		changedFiles.add(entityManagerPath);
 
 		return changedFiles;
 	}
 
+	@Override
+	public void editEntityManager(ParsedSource source, TokenStreamRewriter rewriter) {
+		String[] saveModified = new String[]{
+				"public static boolean save%1$sModified() {",
+				"\t// The PKs of the modified instances may have changed.",
+				"\tpkIndex.remove(%1$s.class);",
+				"\tputList(\"%1$s\", loadList(%1$s.class), %1$s::getPK);",
+				"\treturn true;",
+				"}"};
+		ArrayList<String> members = new ArrayList<>();
+		for (String entity : new TreeSet<>(entityNames)) {
+			members.add("");
+			for (String line : saveModified)
+				members.add(String.format(line, entity));
+		}
+		var converter = new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.End, members.toArray(String[]::new));
+		converter.visitCompilationUnit(source.getCompilationUnit());
+	}
+
 	/**
 	 * In a class, collect its all fields whose type is an Entity type.
 	 */
@@ -110,14 +115,14 @@ public class SaveModified extends GitCommit {
 
 	static class ModifiedVariablesCollector extends JavaParserBaseVisitor<Object> {
 		private final List<String> methods;
-		private final HashSet<String> entityTypes;
+		private final Set<String> entityTypes;
 
 		HashMap<String, String> definedVariables;
 		HashMap<String, String> variableTypesToSave;
 		private final HashMap<String, String> classFields;
 		private final TokenStreamRewriter rewriter;
 
-		public ModifiedVariablesCollector(List<String> methods, HashSet<String> entityTypes, HashMap<String, String> classFields, TokenStreamRewriter rewriter) {
+		public ModifiedVariablesCollector(List<String> methods, Set<String> entityTypes, HashMap<String, String> classFields, TokenStreamRewriter rewriter) {
 			this.methods = methods;
 			this.entityTypes = entityTypes;
 			this.classFields = classFields;
@@ -213,7 +218,7 @@ public class SaveModified extends GitCommit {
 			@Override
 			public Object visitExpression(JavaParser.ExpressionContext ctx) {
 				if (canAdd && ctx.bop != null && "&&".equals(ctx.bop.getText()) && ctx.expression(1).getText().equals("true")) {
-					String str = typesToSave.stream().map(s -> "EntityManager.saveModified(" + s + ".class)").collect(Collectors.joining(" && "));
+					String str = typesToSave.stream().map(s -> "EntityManager.save" + s + "Modified()").collect(Collectors.joining(" && "));
 
 					String indent = "\t".repeat(ctx.expression(1).start.getCharPositionInLine());
 					rewriter.insertBefore(ctx.expression(1).start, str + "\n" + indent + " &&\n" + indent);
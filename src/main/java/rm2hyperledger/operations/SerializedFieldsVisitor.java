@@ -0,0 +1,106 @@
+package rm2hyperledger.operations;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStreamRewriter;
+import rm2hyperledger.FileHelper;
+import rm2hyperledger.ImportsCollector;
+import rm2hyperledger.JavaParser;
+import rm2hyperledger.checkers.EntityChecker;
+import rm2hyperledger.checkers.ModifierChecker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Visit the fields of an entity class that Genson serializes, @Property and @JsonProperty, in the order they are
+ * declared, to generate the code that writes and reads them.
+ */
+abstract class SerializedFieldsVisitor extends ImportsCollector<Object> {
+	private final Set<String> entityTypes;
+
+	protected String className;
+	protected boolean isAbstract;
+	/**
+	 * The generated members call those of the super class, which are generated too.
+	 */
+	protected boolean hasEntitySuperClass;
+
+	protected SerializedFieldsVisitor(TokenStreamRewriter rewriter, Set<String> entityTypes) {
+		super(rewriter);
+		this.entityTypes = entityTypes;
+	}
+
+	static Set<String> findEntityTypes(Path folder) throws IOException {
+		try (var files = Files.list(folder)) {
+			return files.filter(EntityChecker::isEntityClass).
+					map(f -> FileHelper.getFileNameWithoutExtension(f.getFileName().toString())).
+					collect(Collectors.toSet());
+		}
+	}
+
+	/**
+	 * @param type the type of the field, as written in the source
+	 */
+	protected abstract void addField(String type, String name);
+
+	protected abstract void addMembers(JavaParser.ClassDeclarationContext ctx);
+
+	@Override
+	public Object visitTypeDeclaration(JavaParser.TypeDeclarationContext ctx) {
+		if (className != null || ctx.classDeclaration() == null)
+			return null;
+
+		isAbstract = ModifierChecker.hasCIModifier(ctx.classOrInterfaceModifier(), JavaParser.ABSTRACT);
+		return super.visitTypeDeclaration(ctx);
+	}
+
+	@Override
+	public Object visitClassDeclaration(JavaParser.ClassDeclarationContext ctx) {
+		className = ctx.IDENTIFIER().getText();
+		hasEntitySuperClass = ctx.typeType() != null && entityTypes.contains(ctx.typeType().getText());
+
+		for (var declaration : ctx.classBody().classBodyDeclaration())
+			visitClassBodyDeclaration(declaration);
+		addMembers(ctx);
+		return null;
+	}
+
+	@Override
+	public Object visitClassBodyDeclaration(JavaParser.ClassBodyDeclarationContext ctx) {
+		var memberDeclaration = ctx.memberDeclaration();
+		if (memberDeclaration == null || memberDeclaration.fieldDeclaration() == null)
+			return null;
+		if (ModifierChecker.hasModifier(ctx.modifier(), JavaParser.STATIC) || isSerialized(ctx) == false)
+			return null;
+
+		// The generated code assigns the fields, like Genson does with reflection.
+		for (var modifier : ctx.modifier()) {
+			if (modifier.getStart().getType() == JavaParser.FINAL) {
+				int index = modifier.getStart().getTokenIndex();
+				boolean followedBySpace = rewriter.getTokenStream().get(index + 1).getChannel() == Token.HIDDEN_CHANNEL;
+				rewriter.delete(index, followedBySpace ? index + 1 : index);
+			}
+		}
+
+		var fieldDeclaration = memberDeclaration.fieldDeclaration();
+		String type = fieldDeclaration.typeType().getText();
+		for (var declarator : fieldDeclaration.variableDeclarators().variableDeclarator())
+			addField(type, declarator.variableDeclaratorId().IDENTIFIER().getText());
+		return null;
+	}
+
+	private static boolean isSerialized(JavaParser.ClassBodyDeclarationContext ctx) {
+		for (var modifier : ctx.modifier()) {
+			var annotation = modifier.classOrInterfaceModifier() == null ? null : modifier.classOrInterfaceModifier().annotation();
+			if (annotation != null) {
+				String name = annotation.qualifiedName().getText();
+				if (name.equals("Property") || name.equals("JsonProperty"))
+					return true;
+			}
+		}
+		return false;
+	}
+}
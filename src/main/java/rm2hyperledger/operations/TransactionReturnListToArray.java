@@ -1,12 +1,9 @@
 package rm2hyperledger.operations;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import rm2hyperledger.*;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -20,41 +17,28 @@ import java.util.stream.StreamSupport;
 public class TransactionReturnListToArray extends GitCommit {
 	private static final Logger logger = Logger.getLogger(TransactionReturnListToArray.class.getName());
 
-	private ArrayList<Path> changedFiles;
-
 	public TransactionReturnListToArray(String targetFolder) {
 		super("Transactions cannot return list\n\nThey must return array.", targetFolder);
 	}
 
 	@Override
 	protected ArrayList<Path> editCommitCore() throws IOException {
-		changedFiles = new ArrayList<>();
-		try (DirectoryStream<Path> stream2 = Files.newDirectoryStream(Path.of(targetFolder, "src\\main\\java\\services\\impl"), "*.java")) {
-			for (var f : stream2)
-				editFile(f);
+		try (DirectoryStream<Path> stream2 = Files.newDirectoryStream(Path.of(targetFolder, "src", "main", "java", "services", "impl"), "*.java")) {
+			return editFiles(StreamSupport.stream(stream2.spliterator(), false), this::editFile);
 		}
-		return changedFiles;
 	}
 
-	private void editFile(Path f) {
-		try {
-			CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(f)));
-
-			JavaParser parser = new JavaParser(tokens);
-			TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(tokens);
-			var converter = new Converter(rewriter);
+	private boolean editFile(Path f) throws IOException {
+		ParsedSource source = ParsedSourceCache.parse(f);
+		TokenStreamRewriter2 rewriter = new TokenStreamRewriter2(source.getTokens());
+		var converter = new Converter(rewriter);
 
-			converter.visit(parser.compilationUnit());
-			if (rewriter.hasChanges()) {
-				try (PrintWriter out = new PrintWriter(f.toFile())) {
-					out.print(rewriter.getText());
-				}
-				changedFiles.add(f);
-			}
-		}
-		catch (IOException exception) {
-			logger.severe(exception.toString());
+		converter.visit(source.getCompilationUnit());
+		if (rewriter.hasChanges()) {
+			FileHelper.writeSource(f, rewriter.getText());
+			return true;
 		}
+		return false;
 	}
 
 	static class Converter extends JavaParserBaseVisitor<Object> {
@@ -0,0 +1,28 @@
+package rm2hyperledger.vcs;
+
+/**
+ * Leave the changes in the working tree.
+ */
+public class NoVcsBackend extends VcsBackend {
+	public NoVcsBackend(String targetFolder) {
+		super(targetFolder);
+	}
+
+	@Override
+	public String getName() {
+		return "none";
+	}
+
+	@Override
+	public boolean readsWorkingTree() {
+		return false;
+	}
+
+	@Override
+	public void add(String... arguments) {
+	}
+
+	@Override
+	public void commit(String message) {
+	}
+}
@@ -0,0 +1,34 @@
+package rm2hyperledger.vcs;
+
+import java.io.IOException;
+
+/**
+ * Run git add and git commit for every step.
+ */
+public class ShellVcsBackend extends VcsBackend {
+	public ShellVcsBackend(String targetFolder) {
+		super(targetFolder);
+	}
+
+	@Override
+	public String getName() {
+		return "shell";
+	}
+
+	@Override
+	public void add(String... arguments) throws IOException, InterruptedException {
+		git(prepend("add", arguments));
+	}
+
+	@Override
+	public void commit(String message) throws IOException, InterruptedException {
+		git("commit", "-m", message);
+	}
+
+	private static String[] prepend(String first, String[] rest) {
+		String[] arguments = new String[rest.length + 1];
+		arguments[0] = first;
+		System.arraycopy(rest, 0, arguments, 1, rest.length);
+		return arguments;
+	}
+}
@@ -0,0 +1,96 @@
+package rm2hyperledger.vcs;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Remember what each step stages, and write a single commit in {@link #finish()}.
+ * <p>
+ * Consecutive adds with the same options are merged into one git add.
+ */
+public class SquashVcsBackend extends VcsBackend {
+	/**
+	 * Keep command lines well below the 32767-character limit of Windows.
+	 */
+	private static final int MAX_ARGUMENTS_LENGTH = 8000;
+
+	private final ArrayList<List<String>> batchOptions = new ArrayList<>();
+	private final ArrayList<LinkedHashSet<String>> batchPaths = new ArrayList<>();
+	private final ArrayList<String> subjects = new ArrayList<>();
+
+	public SquashVcsBackend(String targetFolder) {
+		super(targetFolder);
+	}
+
+	@Override
+	public String getName() {
+		return "squash";
+	}
+
+	@Override
+	public boolean readsWorkingTree() {
+		// Files are added in finish().
+		return false;
+	}
+
+	@Override
+	public void add(String... arguments) {
+		int i = 0;
+		while (i < arguments.length && arguments[i].startsWith("-"))
+			i++;
+		List<String> options = List.of(Arrays.copyOfRange(arguments, 0, i));
+		List<String> paths = Arrays.asList(arguments).subList(i, arguments.length);
+		if (paths.isEmpty())
+			return;
+
+		int last = batchOptions.size() - 1;
+		if (last < 0 || batchOptions.get(last).equals(options) == false) {
+			batchOptions.add(options);
+			batchPaths.add(new LinkedHashSet<>());
+			last++;
+		}
+		batchPaths.get(last).addAll(paths);
+	}
+
+	@Override
+	public void commit(String message) {
+		subjects.add(message.lines().findFirst().orElse(""));
+	}
+
+	@Override
+	public void finish() throws IOException, InterruptedException {
+		for (int i = 0; i < batchOptions.size(); i++) {
+			ArrayList<String> arguments = new ArrayList<>();
+			int length = 0;
+			for (String path : batchPaths.get(i)) {
+				if (arguments.isEmpty() == false && length + path.length() > MAX_ARGUMENTS_LENGTH) {
+					addBatch(batchOptions.get(i), arguments);
+					arguments.clear();
+					length = 0;
+				}
+				arguments.add(path);
+				length += path.length() + 1;
+			}
+			addBatch(batchOptions.get(i), arguments);
+		}
+
+		if (subjects.isEmpty() == false) {
+			StringBuilder message = new StringBuilder("Convert to Hyperledger Fabric chaincode\n");
+			for (String subject : subjects)
+				message.append("\n- ").append(subject);
+			git("commit", "-m", message.toString());
+		}
+
+		batchOptions.clear();
+		batchPaths.clear();
+		subjects.clear();
+	}
+
+	private void addBatch(List<String> options, List<String> paths) throws IOException, InterruptedException {
+		ArrayList<String> arguments = new ArrayList<>();
+		arguments.add("add");
+		arguments.addAll(options);
+		arguments.addAll(paths);
+		git(arguments.toArray(String[]::new));
+	}
+}
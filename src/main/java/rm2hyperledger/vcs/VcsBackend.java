@@ -0,0 +1,119 @@
+package rm2hyperledger.vcs;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Records the steps of a conversion in the version control system of the target folder.
+ */
+public abstract class VcsBackend {
+	protected final String targetFolder;
+	protected Logger logger = Logger.getLogger(this.getClass().getSimpleName());
+
+	private int processCount = 0;
+	private long elapsedNanos = 0;
+
+	/**
+	 * Processes and time of each git command, such as add or commit.
+	 */
+	private final Map<String, Integer> commandCounts = new TreeMap<>();
+	private final Map<String, Long> commandNanos = new TreeMap<>();
+
+	protected VcsBackend(String targetFolder) {
+		this.targetFolder = targetFolder;
+	}
+
+	/**
+	 * @param name shell, none or squash
+	 */
+	public static VcsBackend create(String name, String targetFolder) {
+		switch (name) {
+			case "shell":
+				return new ShellVcsBackend(targetFolder);
+			case "none":
+				return new NoVcsBackend(targetFolder);
+			case "squash":
+				return new SquashVcsBackend(targetFolder);
+			default:
+				throw new IllegalArgumentException(String.format("Unknown VCS backend \"%s\". Use shell, none or squash.", name));
+		}
+	}
+
+	public abstract String getName();
+
+	/**
+	 * @param arguments arguments of git add, options first
+	 */
+	public abstract void add(String... arguments) throws IOException, InterruptedException;
+
+	public abstract void commit(String message) throws IOException, InterruptedException;
+
+	/**
+	 * @return true if the files of each step must be written before {@link #add(String...)}, because git reads them
+	 * at once.
+	 */
+	public boolean readsWorkingTree() {
+		return true;
+	}
+
+	/**
+	 * Called once after the last step.
+	 */
+	public void finish() throws IOException, InterruptedException {
+	}
+
+	public int getProcessCount() {
+		return processCount;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the git commands run so far, in alphabetical order
+	 */
+	public Iterable<String> getCommands() {
+		return commandCounts.keySet();
+	}
+
+	public int getProcessCount(String command) {
+		return commandCounts.getOrDefault(command, 0);
+	}
+
+	public long getElapsedNanos(String command) {
+		return commandNanos.getOrDefault(command, 0L);
+	}
+
+	/**
+	 * Run git in the target folder and wait for it.
+	 * <p>
+	 * The output is discarded, otherwise a verbose command may block on a full pipe.
+	 *
+	 * @return exit code of git
+	 */
+	protected int git(String... arguments) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		try {
+			Process process = new ProcessBuilder(Stream.concat(Stream.of("git"), Stream.of(arguments)).toArray(String[]::new))
+					.directory(new java.io.File(targetFolder))
+					.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+					.redirectError(ProcessBuilder.Redirect.DISCARD)
+					.start();
+			int exitCode = process.waitFor();
+			if (exitCode != 0)
+				logger.fine(String.format("git %s exited with %d.", arguments[0], exitCode));
+			return exitCode;
+		}
+		finally {
+			long elapsed = System.nanoTime() - start;
+			processCount++;
+			elapsedNanos += elapsed;
+			commandCounts.merge(arguments[0], 1, Integer::sum);
+			commandNanos.merge(arguments[0], elapsed, Long::sum);
+		}
+	}
+}
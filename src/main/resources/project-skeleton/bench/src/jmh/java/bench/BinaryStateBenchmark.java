@@ -0,0 +1,105 @@
+package bench;
+
+import com.owlike.genson.Genson;
+import entities.BinaryState;
+import entities.GensonHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the state formats on a table of {@code size} rows: the time to serialize and deserialize it, and its size,
+ * which is printed after each trial.
+ * <p>
+ * Run with {@code ./gradlew :bench:jmh}. To compare the bytes written by the transactions, convert the project again
+ * with {@code --state-format binary} and run {@link TransactionBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryStateBenchmark {
+	@Param({"100", "10000"})
+	public int size;
+
+	@Param({"json", "binary"})
+	public String format;
+
+	private final Genson genson = new Genson();
+	private List<Row> rows;
+	private String state;
+
+	@Setup
+	public void setup() {
+		rows = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			Row row = new Row();
+			row.id = i;
+			row.name = "row" + i;
+			row.amount = i * 0.5;
+			row.itemsPKs = new LinkedList<>(List.of(i, i + 1));
+			rows.add(row);
+		}
+		state = serialize();
+	}
+
+	@TearDown
+	public void tearDown() {
+		byte[] bytes = format.equals("json") ? state.getBytes(StandardCharsets.UTF_8) : BinaryState.toBytes(state);
+		System.out.printf("%s, %d rows: %d bytes, %.1f bytes per row%n", format, size, bytes.length, (double) bytes.length / size);
+	}
+
+	@Benchmark
+	public String serialize() {
+		if (format.equals("json"))
+			return genson.serialize(rows);
+		return BinaryState.serialize(rows);
+	}
+
+	@Benchmark
+	public List<Row> deserialize() {
+		if (format.equals("json"))
+			return GensonHelper.deserializeList(genson, state, Row.class);
+		return BinaryState.deserializeList(state, Row.class);
+	}
+
+	/**
+	 * Shaped like a converted entity: a few properties and a list of PKs, with the codec that is generated for
+	 * entities.
+	 */
+	public static class Row implements BinaryState.Encodable {
+		static {
+			BinaryState.register(Row.class, in -> {
+				Row o = new Row();
+				o.readBinary(in);
+				return o;
+			});
+		}
+
+		public int id;
+		public String name;
+		public double amount;
+		public List<Object> itemsPKs;
+
+		@Override
+		public void writeBinary(BinaryState.Writer out) {
+			out.writeInt(this.id);
+			out.writeString(this.name);
+			out.writeDouble(this.amount);
+			out.writeValues(this.itemsPKs);
+		}
+
+		protected void readBinary(BinaryState.Reader in) {
+			this.id = in.readInt();
+			this.name = in.readString();
+			this.amount = in.readDouble();
+			this.itemsPKs = in.readValues();
+		}
+	}
+}
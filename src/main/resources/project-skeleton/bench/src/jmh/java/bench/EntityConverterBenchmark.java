@@ -0,0 +1,135 @@
+package bench;
+
+import com.owlike.genson.*;
+import com.owlike.genson.stream.ObjectReader;
+import com.owlike.genson.stream.ObjectWriter;
+import entities.GensonHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare Genson introspecting a class by reflection with the converter that is generated for each entity, on a
+ * table of {@code size} rows. {@code firstUse} creates a Genson and serializes one row, as the chaincode does once
+ * it starts.
+ * <p>
+ * Run with {@code ./gradlew :bench:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityConverterBenchmark {
+	@Param({"1000"})
+	public int size;
+
+	@Param({"reflection", "converter"})
+	public String genson;
+
+	private Genson instance;
+	private List<Row> rows;
+	private String json;
+
+	@Setup
+	public void setup() {
+		instance = create();
+		rows = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			Row row = new Row();
+			row.id = i;
+			row.name = "row" + i;
+			row.amount = i * 0.5;
+			row.itemsPKs = new LinkedList<>(List.of(i, i + 1));
+			rows.add(row);
+		}
+		json = instance.serialize(rows);
+	}
+
+	private Genson create() {
+		if (genson.equals("reflection"))
+			return new Genson();
+		return new GensonBuilder().withConverters(new RowConverter()).create();
+	}
+
+	@Benchmark
+	public String serialize() {
+		return instance.serialize(rows);
+	}
+
+	@Benchmark
+	public List<Row> deserialize() {
+		return GensonHelper.deserializeList(instance, json, Row.class);
+	}
+
+	@Benchmark
+	public String firstUse() {
+		return create().serialize(rows.get(0));
+	}
+
+	/**
+	 * Shaped like a converted entity: a few properties and a list of PKs, with the methods that are generated for
+	 * entities.
+	 */
+	public static class Row {
+		public int id;
+		public String name;
+		public double amount;
+		public List<Object> itemsPKs;
+
+		private static final char[][] jsonNames = {"id".toCharArray(), "name".toCharArray(), "amount".toCharArray(), "itemsPKs".toCharArray()};
+
+		public void writeJson(ObjectWriter writer, Context ctx) {
+			writer.writeEscapedName(jsonNames[0]).writeValue(this.id);
+			writer.writeEscapedName(jsonNames[1]).writeString(this.name);
+			writer.writeEscapedName(jsonNames[2]).writeValue(this.amount);
+			writer.writeEscapedName(jsonNames[3]);
+			ctx.genson.serialize(this.itemsPKs, List.class, writer, ctx);
+		}
+
+		public boolean readJson(ObjectReader reader, Context ctx) {
+			switch (reader.name()) {
+				case "id":
+					this.id = reader.valueAsInt();
+					return true;
+				case "name":
+					this.name = reader.valueAsString();
+					return true;
+				case "amount":
+					this.amount = reader.valueAsDouble();
+					return true;
+				case "itemsPKs":
+					this.itemsPKs = ctx.genson.deserialize(GenericType.of(List.class), reader, ctx);
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	public static class RowConverter implements Converter<Row> {
+		@Override
+		public void serialize(Row object, ObjectWriter writer, Context ctx) {
+			writer.beginObject();
+			object.writeJson(writer, ctx);
+			writer.endObject();
+		}
+
+		@Override
+		public Row deserialize(ObjectReader reader, Context ctx) {
+			Row object = new Row();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				reader.next();
+				if (object.readJson(reader, ctx) == false)
+					reader.skipValue();
+			}
+			reader.endObject();
+			return object;
+		}
+	}
+}
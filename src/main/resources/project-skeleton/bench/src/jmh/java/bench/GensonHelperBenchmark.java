@@ -0,0 +1,72 @@
+package bench;
+
+import com.owlike.genson.Genson;
+import entities.GensonHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare {@link GensonHelper#deserializeList} with the helper it replaced, which deserialized the table to
+ * {@code Object}, then serialized and deserialized each element again.
+ * <p>
+ * Run with {@code ./gradlew :bench:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GensonHelperBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int size;
+
+	private final Genson genson = new Genson();
+	private String json;
+
+	@Setup
+	public void setup() {
+		List<Row> rows = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			Row row = new Row();
+			row.id = i;
+			row.name = "row" + i;
+			row.amount = i * 0.5;
+			row.itemsPKs = new LinkedList<>(List.of(i, i + 1));
+			rows.add(row);
+		}
+		json = genson.serialize(rows);
+	}
+
+	@Benchmark
+	public List<Row> singlePass() {
+		return GensonHelper.deserializeList(genson, json, Row.class);
+	}
+
+	@Benchmark
+	public List<Row> reserialize() {
+		Object o = genson.deserialize(json, Object.class);
+		List l = (List) o;
+		List<Row> l2 = new LinkedList<>();
+		for (int i = 0; i < l.size(); i++) {
+			String j = genson.serialize(l.get(i));
+			l2.add(genson.deserialize(j, Row.class));
+		}
+
+		return l2;
+	}
+
+	/**
+	 * Shaped like a converted entity: a few properties and a list of PKs.
+	 */
+	public static class Row {
+		public int id;
+		public String name;
+		public double amount;
+		public List<Object> itemsPKs;
+	}
+}
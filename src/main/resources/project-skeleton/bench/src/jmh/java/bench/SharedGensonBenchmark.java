@@ -0,0 +1,55 @@
+package bench;
+
+import com.owlike.genson.Genson;
+import com.owlike.genson.GensonBuilder;
+import converters.LocalDateConverter;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Genson work of a transaction that takes a LocalDate and returns an entity: with {@code perCall}, the Genson is
+ * built in the transaction, as the transaction wrappers did, with {@code shared} it is built once, as
+ * EntityConverters.genson is.
+ * <p>
+ * Run with {@code ./gradlew :bench:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SharedGensonBenchmark {
+	@Param({"perCall", "shared"})
+	public String genson;
+
+	private static final Genson shared = create();
+
+	private final String date = "2020-01-01";
+	private EntityConverterBenchmark.Row row;
+
+	private static Genson create() {
+		return new GensonBuilder().withConverters(new EntityConverterBenchmark.RowConverter(), new LocalDateConverter()).create();
+	}
+
+	@Setup
+	public void setup() {
+		row = new EntityConverterBenchmark.Row();
+		row.id = 1;
+		row.name = "row1";
+		row.amount = 0.5;
+		row.itemsPKs = new LinkedList<>(List.of(1, 2));
+	}
+
+	@Benchmark
+	public String transaction() {
+		Genson instance = genson.equals("shared") ? shared : create();
+		LocalDate argument = instance.deserialize("\"" + date + "\"", LocalDate.class);
+		row.name = argument.toString();
+		return instance.serialize(row);
+	}
+}
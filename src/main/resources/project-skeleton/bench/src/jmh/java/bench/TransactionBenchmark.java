@@ -0,0 +1,87 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each transaction on an {@link InMemoryChaincodeStub} holding {@code size} objects of each kind.
+ * <p>
+ * The transactions are found by {@code bench/build.gradle} and passed as the {@code transaction} parameter. The
+ * {@code gc} profiler reports the allocation rate, the {@code bytesWritten} counter the bytes written to the state.
+ * Run with {@code ./gradlew :bench:jmh}.
+ * <p>
+ * {@code createXxx} transactions use new indexes, so that they do not fail on existing objects. The other
+ * transactions cycle through the existing objects.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionBenchmark {
+	@Param({})
+	public String transaction;
+
+	@Param({"1000"})
+	public int size;
+
+	private TransactionDriver driver;
+	private TransactionDriver.Call call;
+	private boolean creates;
+	private int next = 0;
+
+	private PrintStream out;
+	private long operations = 0;
+	private long bytesWritten = 0;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long bytesWritten;
+		public long failed;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		// The generated EntityManager prints each state it loads.
+		out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		String transactions = System.getProperty("bench.transactions", transaction);
+		List<String> all = Arrays.asList(transactions.split(","));
+
+		driver = new TransactionDriver();
+		driver.populate(all, size);
+		call = driver.prepare(transaction);
+		creates = TransactionDriver.isCreator(transaction);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(out);
+		if (operations > 0)
+			System.out.printf("%s: %.1f bytes written per transaction%n", transaction, (double) bytesWritten / operations);
+	}
+
+	@Benchmark
+	public Object run(Counters counters) {
+		int index = creates ? size + next++ : next++ % size;
+		long written = driver.getStub().getBytesWritten();
+		long failed = driver.getFailed();
+
+		Object result = call.invoke(index);
+
+		written = driver.getStub().getBytesWritten() - written;
+		counters.bytesWritten += written;
+		counters.failed += driver.getFailed() - failed;
+		bytesWritten += written;
+		operations++;
+		return result;
+	}
+}
@@ -0,0 +1,379 @@
+package bench;
+
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.protos.msp.Identities.SerializedIdentity;
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * A ChaincodeStub that keeps the world state in memory, for running the chaincode without a Fabric network.
+ * <p>
+ * Like a peer, it does not show the writes of a transaction to the reads of the same transaction. The writes are
+ * applied by {@link #commit()} or dropped by {@link #rollback()}.
+ */
+public class InMemoryChaincodeStub implements ChaincodeStub {
+	private static final String MAX_UNICODE_RUNE = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+	/**
+	 * A self-signed certificate, so that {@link org.hyperledger.fabric.contract.Context} can create the client
+	 * identity.
+	 */
+	private static final String CERTIFICATE = String.join("\n",
+			"-----BEGIN CERTIFICATE-----",
+			"MIIB6TCCAY+gAwIBAgIUdrlpe2DstL9hzeSKo/14/pNxEKMwCgYIKoZIzj0EAwIw",
+			"STELMAkGA1UEBhMCVVMxGTAXBgNVBAoMEG9yZzEuZXhhbXBsZS5jb20xDzANBgNV",
+			"BAsMBmNsaWVudDEOMAwGA1UEAwwFYmVuY2gwIBcNMjYxMDE4MDk1OTI1WhgPMjEy",
+			"NjA5MjQwOTU5MjVaMEkxCzAJBgNVBAYTAlVTMRkwFwYDVQQKDBBvcmcxLmV4YW1w",
+			"bGUuY29tMQ8wDQYDVQQLDAZjbGllbnQxDjAMBgNVBAMMBWJlbmNoMFkwEwYHKoZI",
+			"zj0CAQYIKoZIzj0DAQcDQgAEI4Fzo+l/+YNICU2bTeeSQNhU7R44nz/4C64WdWUU",
+			"dZw762R9+NJ7QMWa5jI+vdLsaqjd063/5FGeIWuFrTFuf6NTMFEwHQYDVR0OBBYE",
+			"FBeo6q3cjJ2qov2lAg/82YVemkW/MB8GA1UdIwQYMBaAFBeo6q3cjJ2qov2lAg/8",
+			"2YVemkW/MA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwIDSAAwRQIgUlIpF/t/",
+			"Epe9rMMATL8ZPhU1gfqKoaDVhQ8re/LZolsCIQDNWywTE+9wrNoDKBlcbfvsuVIf",
+			"I8h9cFsf7nwduv2X0Q==",
+			"-----END CERTIFICATE-----",
+			"");
+
+	private static final String MSP_ID = "Org1MSP";
+
+	private final TreeMap<String, byte[]> state = new TreeMap<>();
+	private final Map<String, byte[]> validationParameters = new HashMap<>();
+
+	/**
+	 * Writes of the current transaction. A null value deletes the key.
+	 */
+	private final TreeMap<String, byte[]> writeSet = new TreeMap<>();
+
+	private final byte[] creator = SerializedIdentity.newBuilder().setMspid(MSP_ID)
+			.setIdBytes(ByteString.copyFrom(CERTIFICATE, StandardCharsets.UTF_8)).build().toByteArray();
+
+	private long transactionCount = 0;
+	private ChaincodeEvent event;
+
+	private long reads = 0;
+	private long bytesRead = 0;
+	private long writes = 0;
+	private long deletes = 0;
+	private long bytesWritten = 0;
+
+	/**
+	 * Apply the writes of the current transaction and start the next one.
+	 */
+	public void commit() {
+		for (var entry : writeSet.entrySet()) {
+			if (entry.getValue() == null)
+				state.remove(entry.getKey());
+			else
+				state.put(entry.getKey(), entry.getValue());
+		}
+		rollback();
+	}
+
+	/**
+	 * Drop the writes of the current transaction and start the next one.
+	 */
+	public void rollback() {
+		writeSet.clear();
+		event = null;
+		transactionCount++;
+	}
+
+	public Map<String, byte[]> getWorldState() {
+		return Collections.unmodifiableMap(state);
+	}
+
+	public long getReads() {
+		return reads;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getWrites() {
+		return writes;
+	}
+
+	public long getDeletes() {
+		return deletes;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Like a peer, return an empty array for a missing key.
+	 */
+	@Override
+	public byte[] getState(String key) {
+		byte[] value = state.getOrDefault(key, new byte[0]);
+		reads++;
+		bytesRead += value.length;
+		return value;
+	}
+
+	@Override
+	public void putState(String key, byte[] value) {
+		if (key == null || key.isEmpty())
+			throw new IllegalArgumentException("key must not be null or empty");
+		writeSet.put(key, value.clone());
+		writes++;
+		bytesWritten += value.length;
+	}
+
+	@Override
+	public void delState(String key) {
+		writeSet.put(key, null);
+		deletes++;
+	}
+
+	@Override
+	public byte[] getStateValidationParameter(String key) {
+		return validationParameters.get(key);
+	}
+
+	@Override
+	public void setStateValidationParameter(String key, byte[] value) {
+		validationParameters.put(key, value);
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getStateByRange(String startKey, String endKey) {
+		String from = startKey == null || startKey.isEmpty() ? "\u0001" : startKey;
+		String to = endKey == null || endKey.isEmpty() ? MAX_UNICODE_RUNE : endKey;
+		return getRange(from, to);
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String compositeKey) {
+		String key = compositeKey == null || compositeKey.isEmpty() ? CompositeKey.NAMESPACE : compositeKey;
+		return getRange(key, key + MAX_UNICODE_RUNE);
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String objectType, String... attributes) {
+		return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey) {
+		return getStateByPartialCompositeKey(compositeKey == null ? null : compositeKey.toString());
+	}
+
+	private QueryResultsIterator<KeyValue> getRange(String from, String to) {
+		List<KeyValue> results = new ArrayList<>();
+		for (var entry : state.subMap(from, to).entrySet()) {
+			results.add(new InMemoryKeyValue(entry.getKey(), entry.getValue()));
+			reads++;
+			bytesRead += entry.getValue().length;
+		}
+		return new QueryResultsIterator<>() {
+			@Override
+			public Iterator<KeyValue> iterator() {
+				return results.iterator();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	@Override
+	public CompositeKey createCompositeKey(String objectType, String... attributes) {
+		return new CompositeKey(objectType, attributes);
+	}
+
+	@Override
+	public CompositeKey splitCompositeKey(String compositeKey) {
+		return CompositeKey.parseCompositeKey(compositeKey);
+	}
+
+	@Override
+	public List<byte[]> getArgs() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<String> getStringArgs() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public String getFunction() {
+		return null;
+	}
+
+	@Override
+	public List<String> getParameters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public String getTxId() {
+		return String.format("%064x", transactionCount);
+	}
+
+	@Override
+	public String getChannelId() {
+		return "bench";
+	}
+
+	@Override
+	public Instant getTxTimestamp() {
+		return Instant.ofEpochSecond(1_600_000_000L + transactionCount);
+	}
+
+	@Override
+	public byte[] getCreator() {
+		return creator;
+	}
+
+	@Override
+	public String getMspId() {
+		return MSP_ID;
+	}
+
+	@Override
+	public Map<String, byte[]> getTransient() {
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public byte[] getBinding() {
+		return new byte[0];
+	}
+
+	@Override
+	public void setEvent(String name, byte[] payload) {
+		event = ChaincodeEvent.newBuilder().setEventName(name).setPayload(ByteString.copyFrom(payload)).build();
+	}
+
+	@Override
+	public ChaincodeEvent getEvent() {
+		return event;
+	}
+
+	@Override
+	public SignedProposal getSignedProposal() {
+		throw new UnsupportedOperationException("There is no proposal without a Fabric network.");
+	}
+
+	@Override
+	public Response invokeChaincode(String chaincodeName, List<byte[]> args, String channel) {
+		throw new UnsupportedOperationException("Chaincode to chaincode calls are not supported.");
+	}
+
+	@Override
+	public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(String startKey, String endKey, int pageSize, String bookmark) {
+		throw new UnsupportedOperationException("Pagination is not supported.");
+	}
+
+	@Override
+	public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(CompositeKey compositeKey, int pageSize, String bookmark) {
+		throw new UnsupportedOperationException("Pagination is not supported.");
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getQueryResult(String query) {
+		throw new UnsupportedOperationException("Rich queries need CouchDB.");
+	}
+
+	@Override
+	public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(String query, int pageSize, String bookmark) {
+		throw new UnsupportedOperationException("Rich queries need CouchDB.");
+	}
+
+	@Override
+	public QueryResultsIterator<KeyModification> getHistoryForKey(String key) {
+		throw new UnsupportedOperationException("History is not kept.");
+	}
+
+	@Override
+	public byte[] getPrivateData(String collection, String key) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public byte[] getPrivateDataHash(String collection, String key) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public byte[] getPrivateDataValidationParameter(String collection, String key) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public void putPrivateData(String collection, String key, byte[] value) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public void setPrivateDataValidationParameter(String collection, String key, byte[] value) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public void delPrivateData(String collection, String key) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getPrivateDataByRange(String collection, String startKey, String endKey) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String compositeKey) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, CompositeKey compositeKey) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String objectType, String... attributes) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	@Override
+	public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(String collection, String query) {
+		throw new UnsupportedOperationException("Private data is not supported.");
+	}
+
+	private static class InMemoryKeyValue implements KeyValue {
+		private final String key;
+		private final byte[] value;
+
+		InMemoryKeyValue(String key, byte[] value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public byte[] getValue() {
+			return value;
+		}
+
+		@Override
+		public String getStringValue() {
+			return new String(value, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package bench;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.contract.annotation.Transaction;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the {@code @Transaction} methods of the contracts against an {@link InMemoryChaincodeStub}, with arguments
+ * made up from an index, so that the same index always refers to the same objects. The first parameter is taken
+ * as the key; the other string parameters change with every call, so that updates do change the state.
+ * <p>
+ * A transaction is named {@code Contract.method}, e.g. {@code BookManagementImpl.createBook}. The contracts are
+ * looked up in {@code services.impl}.
+ */
+public class TransactionDriver {
+	private static final String CONTRACT_PACKAGE = "services.impl.";
+
+	private final InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+	private final Context ctx = new Context(stub);
+	private final Map<String, Object> contracts = new HashMap<>();
+
+	private long failed = 0;
+	private long calls = 0;
+
+	public InMemoryChaincodeStub getStub() {
+		return stub;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Create {@code size} objects of each kind by running every {@code createXxx} transaction for the indexes 0 to
+	 * size - 1, in the order of {@code transactions}.
+	 */
+	public void populate(List<String> transactions, int size) {
+		List<Call> creators = new ArrayList<>();
+		for (String transaction : transactions) {
+			if (isCreator(transaction))
+				creators.add(prepare(transaction));
+		}
+		for (int i = 0; i < size; i++) {
+			for (Call creator : creators)
+				creator.invoke(i);
+		}
+	}
+
+	public static boolean isCreator(String transaction) {
+		return transaction.substring(transaction.indexOf('.') + 1).startsWith("create");
+	}
+
+	/**
+	 * Look up a transaction. The call commits its writes if it succeeds, and drops them if it throws.
+	 */
+	public Call prepare(String transaction) {
+		int dot = transaction.indexOf('.');
+		if (dot < 0)
+			throw new IllegalArgumentException("Expected Contract.method, got " + transaction);
+
+		Object contract = contracts.computeIfAbsent(transaction.substring(0, dot), TransactionDriver::newContract);
+		String name = transaction.substring(dot + 1);
+
+		Method wrapper = Arrays.stream(contract.getClass().getMethods())
+				.filter(m -> m.getName().equals(name) && m.isAnnotationPresent(Transaction.class))
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("No @Transaction " + transaction));
+
+		// The wrapper takes the complex parameters as strings, the service method has their real types.
+		Class<?>[] wrapperTypes = wrapper.getParameterTypes();
+		Class<?>[] types = Arrays.stream(contract.getClass().getMethods())
+				.filter(m -> m.getName().equals(name) && m.isAnnotationPresent(Transaction.class) == false)
+				.filter(m -> m.getParameterCount() == wrapperTypes.length - 1)
+				.findFirst()
+				.map(Method::getParameterTypes)
+				.orElse(Arrays.copyOfRange(wrapperTypes, 1, wrapperTypes.length));
+
+		return new Call(contract, wrapper, types);
+	}
+
+	private static Object newContract(String name) {
+		try {
+			Class<?> clazz = Class.forName(CONTRACT_PACKAGE + name);
+			if (Modifier.isAbstract(clazz.getModifiers()))
+				throw new IllegalArgumentException(name + " is not a contract");
+			return clazz.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Cannot create contract " + name, e);
+		}
+	}
+
+	private static Object argument(Class<?> wrapperType, Class<?> type, int index, long call) {
+		Object value;
+		if (type == int.class || type == Integer.class)
+			value = index;
+		else if (type == long.class || type == Long.class)
+			value = (long) index;
+		else if (type == short.class || type == Short.class)
+			value = (short) index;
+		else if (type == byte.class || type == Byte.class)
+			value = (byte) index;
+		else if (type == double.class || type == Double.class)
+			value = index + 0.5;
+		else if (type == float.class || type == Float.class)
+			value = index + 0.5f;
+		else if (type == boolean.class || type == Boolean.class)
+			value = index % 2 == 0;
+		else if (type == char.class || type == Character.class)
+			value = (char) ('a' + index % 26);
+		else if (type == String.class)
+			value = call < 0 ? "s" + index : "s" + index + "." + call;
+		else if (type == LocalDate.class)
+			value = LocalDate.ofEpochDay(index).toString();
+		else
+			// An object parameter, which the wrapper deserializes from JSON.
+			value = "null";
+
+		if (wrapperType == String.class)
+			return String.valueOf(value);
+		return value;
+	}
+
+	public class Call {
+		private final Object contract;
+		private final Method wrapper;
+		private final Class<?>[] types;
+
+		private Call(Object contract, Method wrapper, Class<?>[] types) {
+			this.contract = contract;
+			this.wrapper = wrapper;
+			this.types = types;
+		}
+
+		public Object invoke(int index) {
+			Class<?>[] wrapperTypes = wrapper.getParameterTypes();
+			Object[] args = new Object[wrapperTypes.length];
+			args[0] = ctx;
+			for (int i = 1; i < args.length; i++)
+				args[i] = argument(wrapperTypes[i], types[i - 1], index, i == 1 ? -1 : calls);
+			calls++;
+
+			try {
+				Object result = wrapper.invoke(contract, args);
+				stub.commit();
+				return result;
+			} catch (InvocationTargetException e) {
+				// A failed pre- or postcondition, as a peer would reject the transaction.
+				stub.rollback();
+				failed++;
+				return e.getCause();
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
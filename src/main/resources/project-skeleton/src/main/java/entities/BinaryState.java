@@ -0,0 +1,407 @@
+package entities;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The binary state format, used instead of JSON when the project is converted with {@code --state-format binary}.
+ * <p>
+ * A state starts with the version of the format, followed by a list of entities, one entity, a PK or a list of PKs.
+ * Each entity writes its fields in the order they are declared, with the writeBinary method generated from its
+ * fields, and registers its generated readBinary method when its class is initialized. Ints and longs take one byte
+ * for small values, strings are UTF-8, and no field names are written.
+ * <p>
+ * States are kept in strings with one char per byte (ISO-8859-1), so that EntityManager compares and caches them like
+ * JSON states. Such strings take one byte per char in memory.
+ */
+public final class BinaryState {
+	/**
+	 * Written at the start of each state. The reader only reads states of this version, and throws on any other one.
+	 */
+	public static final byte VERSION = 1;
+
+	private static final Map<Class<?>, Function<Reader, ?>> readers = new ConcurrentHashMap<>();
+
+	private BinaryState() {
+	}
+
+	/**
+	 * An entity with a generated writeBinary method.
+	 */
+	public interface Encodable {
+		void writeBinary(Writer out);
+	}
+
+	public static <T> void register(Class<T> type, Function<Reader, T> reader) {
+		readers.put(type, reader);
+	}
+
+	/**
+	 * @param value a list of entities or PKs, an entity or a PK
+	 */
+	public static String serialize(Object value) {
+		Writer out = new Writer();
+		out.writeByte(VERSION);
+		if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			out.writeInt(list.size());
+			for (Object o : list)
+				write(out, o);
+		}
+		else
+			write(out, value);
+		return out.toString();
+	}
+
+	private static void write(Writer out, Object value) {
+		if (value instanceof Encodable)
+			((Encodable) value).writeBinary(out);
+		else
+			out.writeValue(value);
+	}
+
+	public static <T> List<T> deserializeList(String state, Class<T> type) {
+		if (state == null || state.isEmpty())
+			return new ArrayList<>();
+
+		Reader in = new Reader(state);
+		Function<Reader, ?> reader = getReader(type);
+		int size = in.readInt();
+		List<T> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			list.add(type.cast(reader == null ? in.readValue() : reader.apply(in)));
+		return list;
+	}
+
+	public static <T> T deserialize(String state, Class<T> type) {
+		if (state == null || state.isEmpty())
+			return null;
+
+		Reader in = new Reader(state);
+		Function<Reader, ?> reader = getReader(type);
+		return type.cast(reader == null ? in.readValue() : reader.apply(in));
+	}
+
+	/**
+	 * @return the reader of an entity type, or null for PK types.
+	 */
+	private static Function<Reader, ?> getReader(Class<?> type) {
+		Function<Reader, ?> reader = readers.get(type);
+		if (reader == null && Encodable.class.isAssignableFrom(type)) {
+			try {
+				// The entity registers its reader when it is initialized.
+				Class.forName(type.getName(), true, type.getClassLoader());
+			}
+			catch (ClassNotFoundException e) {
+				throw new IllegalStateException(e);
+			}
+			reader = readers.get(type);
+			if (reader == null)
+				throw new IllegalStateException(type.getName() + " has no binary reader.");
+		}
+		return reader;
+	}
+
+	public static byte[] toBytes(String state) {
+		return state.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	public static String fromBytes(byte[] bytes) {
+		return bytes == null ? null : new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Tags of the values written by {@link Writer#writeValue(Object)}.
+	 */
+	private static final int NULL = 0;
+	private static final int INTEGER = 1;
+	private static final int LONG = 2;
+	private static final int STRING = 3;
+	private static final int BOOLEAN = 4;
+	private static final int DOUBLE = 5;
+	private static final int FLOAT = 6;
+	private static final int DATE = 7;
+	private static final int SHORT = 8;
+	private static final int BYTE = 9;
+	private static final int CHARACTER = 10;
+
+	public static final class Writer {
+		private byte[] bytes = new byte[64];
+		private int length = 0;
+
+		public void writeByte(int b) {
+			if (length == bytes.length)
+				bytes = Arrays.copyOf(bytes, length * 2);
+			bytes[length++] = (byte) b;
+		}
+
+		public void writeBoolean(boolean b) {
+			writeByte(b ? 1 : 0);
+		}
+
+		/**
+		 * Zigzag variable-length encoding: 7 bits per byte, small negative numbers are short too.
+		 */
+		public void writeLong(long l) {
+			long v = (l << 1) ^ (l >> 63);
+			while ((v & ~0x7FL) != 0) {
+				writeByte((int) ((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			writeByte((int) v);
+		}
+
+		public void writeInt(int i) {
+			writeLong(i);
+		}
+
+		public void writeShort(short s) {
+			writeLong(s);
+		}
+
+		public void writeChar(char c) {
+			writeLong(c);
+		}
+
+		public void writeDouble(double d) {
+			long bits = Double.doubleToLongBits(d);
+			for (int shift = 56; shift >= 0; shift -= 8)
+				writeByte((int) (bits >>> shift));
+		}
+
+		public void writeFloat(float f) {
+			int bits = Float.floatToIntBits(f);
+			for (int shift = 24; shift >= 0; shift -= 8)
+				writeByte(bits >>> shift);
+		}
+
+		/**
+		 * The length plus one, 0 for null, and the UTF-8 bytes.
+		 */
+		public void writeString(String s) {
+			if (s == null) {
+				writeLong(0);
+				return;
+			}
+			byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+			writeLong(utf8.length + 1L);
+			if (length + utf8.length > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(length * 2, length + utf8.length));
+			System.arraycopy(utf8, 0, bytes, length, utf8.length);
+			length += utf8.length;
+		}
+
+		public void writeDate(LocalDate date) {
+			writeBoolean(date != null);
+			if (date != null)
+				writeLong(date.toEpochDay());
+		}
+
+		public void writeEnum(Enum<?> e) {
+			writeString(e == null ? null : e.name());
+		}
+
+		/**
+		 * A tag and the value, for PKs and fields of boxed types.
+		 */
+		public void writeValue(Object value) {
+			if (value == null)
+				writeByte(NULL);
+			else if (value instanceof Integer) {
+				writeByte(INTEGER);
+				writeInt((Integer) value);
+			}
+			else if (value instanceof Long) {
+				writeByte(LONG);
+				writeLong((Long) value);
+			}
+			else if (value instanceof String) {
+				writeByte(STRING);
+				writeString((String) value);
+			}
+			else if (value instanceof Boolean) {
+				writeByte(BOOLEAN);
+				writeBoolean((Boolean) value);
+			}
+			else if (value instanceof Double) {
+				writeByte(DOUBLE);
+				writeDouble((Double) value);
+			}
+			else if (value instanceof Float) {
+				writeByte(FLOAT);
+				writeFloat((Float) value);
+			}
+			else if (value instanceof LocalDate) {
+				writeByte(DATE);
+				writeLong(((LocalDate) value).toEpochDay());
+			}
+			else if (value instanceof Short) {
+				writeByte(SHORT);
+				writeShort((Short) value);
+			}
+			else if (value instanceof Byte) {
+				writeByte(BYTE);
+				writeByte((Byte) value);
+			}
+			else if (value instanceof Character) {
+				writeByte(CHARACTER);
+				writeChar((Character) value);
+			}
+			else
+				throw new IllegalArgumentException("The binary state format doesn't support " + value.getClass().getName());
+		}
+
+		/**
+		 * The size plus one, 0 for null, and the values.
+		 */
+		public void writeValues(List<?> values) {
+			if (values == null) {
+				writeLong(0);
+				return;
+			}
+			writeLong(values.size() + 1L);
+			for (Object value : values)
+				writeValue(value);
+		}
+
+		/**
+		 * @return the bytes, one char per byte.
+		 */
+		@Override
+		public String toString() {
+			return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	public static final class Reader {
+		private final String state;
+		private int position;
+
+		/**
+		 * @param state a state written by {@link #serialize(Object)}
+		 */
+		Reader(String state) {
+			this.state = state;
+			int version = readByte();
+			if (version != VERSION)
+				throw new IllegalStateException(String.format("Binary state version %d is not supported, expected %d.", version, VERSION));
+		}
+
+		public int readByte() {
+			return state.charAt(position++);
+		}
+
+		public boolean readBoolean() {
+			return readByte() != 0;
+		}
+
+		public long readLong() {
+			long v = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = readByte();
+				v |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		public int readInt() {
+			return (int) readLong();
+		}
+
+		public short readShort() {
+			return (short) readLong();
+		}
+
+		public char readChar() {
+			return (char) readLong();
+		}
+
+		public double readDouble() {
+			long bits = 0;
+			for (int i = 0; i < 8; i++)
+				bits = (bits << 8) | readByte();
+			return Double.longBitsToDouble(bits);
+		}
+
+		public float readFloat() {
+			int bits = 0;
+			for (int i = 0; i < 4; i++)
+				bits = (bits << 8) | readByte();
+			return Float.intBitsToFloat(bits);
+		}
+
+		public String readString() {
+			int length = (int) readLong() - 1;
+			if (length < 0)
+				return null;
+
+			byte[] utf8 = new byte[length];
+			for (int i = 0; i < length; i++)
+				utf8[i] = (byte) state.charAt(position + i);
+			position += length;
+			return new String(utf8, StandardCharsets.UTF_8);
+		}
+
+		public LocalDate readDate() {
+			return readBoolean() ? LocalDate.ofEpochDay(readLong()) : null;
+		}
+
+		public <E extends Enum<E>> E readEnum(Class<E> type) {
+			String name = readString();
+			return name == null ? null : Enum.valueOf(type, name);
+		}
+
+		public Object readValue() {
+			int tag = readByte();
+			switch (tag) {
+				case NULL:
+					return null;
+				case INTEGER:
+					return readInt();
+				case LONG:
+					return readLong();
+				case STRING:
+					return readString();
+				case BOOLEAN:
+					return readBoolean();
+				case DOUBLE:
+					return readDouble();
+				case FLOAT:
+					return readFloat();
+				case DATE:
+					return LocalDate.ofEpochDay(readLong());
+				case SHORT:
+					return readShort();
+				case BYTE:
+					return (byte) readByte();
+				case CHARACTER:
+					return readChar();
+				default:
+					throw new IllegalStateException("Unknown value tag " + tag);
+			}
+		}
+
+		/**
+		 * @return a list that can be changed, or null.
+		 */
+		public List<Object> readValues() {
+			int size = (int) readLong() - 1;
+			if (size < 0)
+				return null;
+
+			List<Object> values = new ArrayList<>(size);
+			for (int i = 0; i < size; i++)
+				values.add(readValue());
+			return values;
+		}
+	}
+}
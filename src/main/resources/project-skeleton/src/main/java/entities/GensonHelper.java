@@ -1,20 +1,40 @@
 package entities;
 
+import com.owlike.genson.Context;
+import com.owlike.genson.GenericType;
 import com.owlike.genson.Genson;
+import com.owlike.genson.stream.ObjectReader;
 
-import java.util.LinkedList;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GensonHelper {
+	/**
+	 * Size of the last list of each type, used to presize the next one. The chaincode process serves many
+	 * transactions, and tables seldom shrink or grow much between two of them.
+	 */
+	private static final Map<Class<?>, Integer> lastSizes = new ConcurrentHashMap<>();
+
+	/**
+	 * Read a JSON array of {@code type} in a single pass.
+	 */
 	public static <T> List<T> deserializeList(Genson genson, String json, Class<T> type) {
-		Object o = genson.deserialize(json, Object.class);
-		List l = (List) o;
-		List<T> l2 = new LinkedList<>();
-		for (int i = 0; i < l.size(); i++) {
-			String j = genson.serialize(l.get(i));
-			l2.add(genson.deserialize(j, type));
+		GenericType<T> elementType = GenericType.of(type);
+		Context context = new Context(genson);
+		List<T> list = new ArrayList<>(lastSizes.getOrDefault(type, 10));
+
+		ObjectReader reader = genson.createReader(new StringReader(json));
+		reader.beginArray();
+		while (reader.hasNext()) {
+			reader.next();
+			list.add(genson.deserialize(elementType, reader, context));
 		}
+		reader.endArray();
 
-		return l2;
+		lastSizes.put(type, list.size());
+		return list;
 	}
 }
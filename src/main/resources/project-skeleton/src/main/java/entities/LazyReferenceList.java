@@ -0,0 +1,223 @@
+package entities;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * The entities that an entity references, as a view of the list of their PKs. The first time an element is read, the
+ * elements not looked up yet are looked up together by their PKs, with one getXxxByPKs call, and kept;
+ * {@link #size()} and {@link #isEmpty()} look up nothing. Adding or removing an element adds or removes its PK.
+ * <p>
+ * An entity looked up by a list is one level deeper than the owner of the list. A list deeper than the maximum fetch
+ * depth logs a warning when it looks up its elements, because following references that deep can load most of the
+ * state in one transaction.
+ */
+public class LazyReferenceList<T> extends AbstractList<T> implements RandomAccess {
+	private static final Logger logger = Logger.getLogger(LazyReferenceList.class.getName());
+
+	private static final Object UNRESOLVED = new Object();
+
+	private static int maxFetchDepth = Integer.getInteger("entities.maxFetchDepth", 3);
+
+	/**
+	 * Depth of the entities looked up by the lists in this transaction. Other entities are at depth 0.
+	 */
+	private static final Map<Object, Integer> depths = new IdentityHashMap<>();
+
+	private final List<Object> pks;
+	private final Class<T> type;
+	private final Function<Collection<Object>, List<T>> getByPKs;
+	private final Function<T, Object> getPK;
+	private final int depth;
+
+	/**
+	 * The element at each index, or UNRESOLVED. Null until an element is read.
+	 */
+	private List<Object> elements;
+	private boolean warned = false;
+
+	/**
+	 * @param owner    the entity that references the elements
+	 * @param pks      the PKs of the elements, changed when elements are added or removed. They are of the type that
+	 *                 getPK returns.
+	 * @param getByPKs looks up the elements of a list of PKs, in order
+	 */
+	@SuppressWarnings("unchecked")
+	public LazyReferenceList(Object owner, List<?> pks, Class<T> type, Function<Collection<Object>, List<T>> getByPKs, Function<T, Object> getPK) {
+		this.pks = (List<Object>) pks;
+		this.type = type;
+		this.getByPKs = getByPKs;
+		this.getPK = getPK;
+		this.depth = depths.getOrDefault(owner, 0);
+	}
+
+	/**
+	 * Called by EntityManager.setStub, since the entities of the last transaction may be loaded again.
+	 */
+	public static void startTransaction() {
+		depths.clear();
+	}
+
+	public static int getMaxFetchDepth() {
+		return maxFetchDepth;
+	}
+
+	public static void setMaxFetchDepth(int maxFetchDepth) {
+		LazyReferenceList.maxFetchDepth = maxFetchDepth;
+	}
+
+	@Override
+	public int size() {
+		return pks.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return pks.isEmpty();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		Objects.checkIndex(index, pks.size());
+		if (elements == null)
+			elements = new ArrayList<>(Collections.nCopies(pks.size(), UNRESOLVED));
+
+		Object element = elements.get(index);
+		if (element == UNRESOLVED) {
+			resolve();
+			element = elements.get(index);
+		}
+		return (T) element;
+	}
+
+	/**
+	 * Look up all elements not looked up yet.
+	 */
+	private void resolve() {
+		if (depth >= maxFetchDepth && warned == false) {
+			logger.warning(String.format("Looking up %s at fetch depth %d, deeper than the maximum %d.",
+					type.getSimpleName(), depth + 1, maxFetchDepth));
+			warned = true;
+		}
+
+		List<Integer> indexes = new ArrayList<>();
+		List<Object> unresolved = new ArrayList<>();
+		for (int i = 0; i < elements.size(); i++) {
+			if (elements.get(i) == UNRESOLVED) {
+				indexes.add(i);
+				unresolved.add(pks.get(i));
+			}
+		}
+
+		List<T> resolved = getByPKs.apply(unresolved);
+		for (int i = 0; i < indexes.size(); i++) {
+			T element = resolved.get(i);
+			elements.set(indexes.get(i), element);
+			if (element != null)
+				depths.putIfAbsent(element, depth + 1);
+		}
+	}
+
+	/**
+	 * Returns the replaced element, see {@link #getOld(int)}.
+	 */
+	@Override
+	public T set(int index, T element) {
+		T old = getOld(index);
+		pks.set(index, getPK.apply(element));
+		if (elements == null)
+			elements = new ArrayList<>(Collections.nCopies(pks.size(), UNRESOLVED));
+		elements.set(index, element);
+		return old;
+	}
+
+	@Override
+	public void add(int index, T element) {
+		pks.add(index, getPK.apply(element));
+		if (elements != null)
+			elements.add(index, element);
+		modCount++;
+	}
+
+	/**
+	 * Returns the removed element, see {@link #getOld(int)}. {@link #remove(Object)} looks up nothing.
+	 */
+	@Override
+	public T remove(int index) {
+		T old = getOld(index);
+		removeAt(index);
+		return old;
+	}
+
+	/**
+	 * @return the element at the index for {@link #set(int, Object)} and {@link #remove(int)}. If it wasn't read
+	 * yet, only it is looked up, which reads the state of its type unless the type was already read in this
+	 * transaction. The other elements are left to be looked up when they are read.
+	 */
+	@SuppressWarnings("unchecked")
+	private T getOld(int index) {
+		Objects.checkIndex(index, pks.size());
+		if (elements != null && elements.get(index) != UNRESOLVED)
+			return (T) elements.get(index);
+		return getByPKs.apply(Collections.singletonList(pks.get(index))).get(0);
+	}
+
+	/**
+	 * Remove the first element with the PK of {@code o}, without looking up the elements.
+	 */
+	@Override
+	public boolean remove(Object o) {
+		int index = indexOf(o);
+		if (index < 0)
+			return false;
+
+		removeAt(index);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		pks.clear();
+		elements = null;
+		modCount++;
+	}
+
+	private void removeAt(int index) {
+		pks.remove(index);
+		if (elements != null)
+			elements.remove(index);
+		modCount++;
+	}
+
+	/**
+	 * Compare the PKs, without looking up the elements.
+	 */
+	@Override
+	public int indexOf(Object o) {
+		if (type.isInstance(o))
+			return pks.indexOf(getPK.apply(type.cast(o)));
+		return o == null ? super.indexOf(null) : -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		if (type.isInstance(o))
+			return pks.lastIndexOf(getPK.apply(type.cast(o)));
+		return o == null ? super.lastIndexOf(null) : -1;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return indexOf(o) >= 0;
+	}
+}
@@ -2,17 +2,22 @@ import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import rm2hyperledger.JavaLexer;
 import rm2hyperledger.JavaParser;
+import rm2hyperledger.SyntheticProject;
 import rm2hyperledger.operations.ConvertEntities;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
 public class EntityConverterTest {
 
 	@Test
-	void test() throws IOException {
-		var tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromFileName("D:\\rm2pt\\cocome-hyperledger\\src\\main\\java\\entities\\Store.java")));
+	void test(@TempDir Path folder) throws IOException {
+		new SyntheticProject(3, 1, 1).write(folder);
+
+		var tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromPath(folder.resolve(Path.of("src", "main", "java", "entities", "Entity1.java")))));
 		var parser = new JavaParser(tokens);
 		TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
 
@@ -0,0 +1,70 @@
+import com.owlike.genson.Converter;
+import com.owlike.genson.Genson;
+import com.owlike.genson.GensonBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rm2hyperledger.operations.AddEntityGensonConverters;
+import rm2hyperledger.vcs.NoVcsBackend;
+
+import javax.tools.ToolProvider;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The generated converters read the PKs of a reference list back as the type of the PK, so that they equal the PKs
+ * that getPK returns.
+ */
+public class EntityGensonConverterTest {
+
+	@Test
+	void testIntegerPKsRoundTrip(@TempDir Path folder) throws Exception {
+		Path entities = folder.resolve(Path.of("src", "main", "java", "entities"));
+		Files.createDirectories(entities);
+		Files.writeString(entities.resolve("Order.java"), String.join("\n",
+				"package entities;",
+				"",
+				"import com.owlike.genson.annotation.*;",
+				"import java.io.Serializable;",
+				"import java.util.*;",
+				"",
+				"public class Order implements Serializable {",
+				"	@JsonProperty",
+				"	private int id;",
+				"	@JsonProperty",
+				"	private List<Integer> itemsPKs = new LinkedList<>();",
+				"}",
+				""));
+
+		new AddEntityGensonConverters(folder.toString()).editCommit(new NoVcsBackend(folder.toString()));
+
+		Path classes = Files.createDirectories(folder.resolve("classes"));
+		String gensonJar = Path.of(Genson.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+		int exitCode = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-classpath", gensonJar, "-d", classes.toString(),
+				entities.resolve("Order.java").toString(),
+				folder.resolve(Path.of("src", "main", "java", "converters", "OrderConverter.java")).toString());
+		Assertions.assertEquals(0, exitCode);
+
+		try (var loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, getClass().getClassLoader())) {
+			Class<?> orderClass = loader.loadClass("entities.Order");
+			Converter<?> converter = (Converter<?>) loader.loadClass("converters.OrderConverter").getDeclaredConstructor().newInstance();
+			Genson genson = new GensonBuilder().withConverters(converter).create();
+
+			Field pks = orderClass.getDeclaredField("itemsPKs");
+			pks.setAccessible(true);
+			Object order = orderClass.getDeclaredConstructor().newInstance();
+			pks.set(order, new LinkedList<>(List.of(1, 2)));
+
+			String json = genson.serialize(order);
+			Object read = genson.deserialize(json, orderClass);
+			// List.equals compares the elements with equals, and Long.valueOf(1) doesn't equal Integer.valueOf(1).
+			Assertions.assertEquals(List.of(1, 2), pks.get(read));
+			Assertions.assertEquals(json, genson.serialize(read));
+		}
+	}
+}
@@ -0,0 +1,76 @@
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.TokenStreamRewriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import rm2hyperledger.AddClassMemberVisitor;
+import rm2hyperledger.FusedRewriter;
+import rm2hyperledger.JavaLexer;
+import rm2hyperledger.JavaParser;
+import rm2hyperledger.ParsedSourceCache;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+public class FusedRewriterTest {
+	private static final String source = "package a;\n\nimport java.util.List;\n\npublic class A {\n\tint x;\n\n\tint f() {\n\t\treturn x;\n\t}\n}\n";
+
+	/**
+	 * Steps that insert at the same places and add imports.
+	 */
+	private static final List<BiConsumer<JavaParser.CompilationUnitContext, TokenStreamRewriter>> steps = List.of(
+			(tree, rewriter) -> {
+				rewriter.insertBefore(tree.typeDeclaration(0).start, "import b.B;\n");
+				rewriter.insertBefore(tree.typeDeclaration(0).start, "import c.C;\n");
+				rewriter.insertAfter(tree.typeDeclaration(0).classDeclaration().classBody().start, "\n\tint y;");
+				rewriter.replace(tree.typeDeclaration(0).classDeclaration().classBody().classBodyDeclaration(1).start, "public int");
+			},
+			(tree, rewriter) -> new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.End,
+					new String[]{"", "int z;"}, "java.util.*", "b.B", "d.D").visit(tree),
+			(tree, rewriter) -> new AddClassMemberVisitor(rewriter, AddClassMemberVisitor.EditLocation.Start,
+					new String[]{"int w;"}, "java.util.*", "java.io.File").visit(tree));
+
+	private static CommonTokenStream lex(String text) {
+		CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromString(text)));
+		tokens.fill();
+		return tokens;
+	}
+
+	@Test
+	void testSameTextAsSteppedRewrites() {
+		String stepped = source;
+		for (var step : steps) {
+			CommonTokenStream tokens = lex(stepped);
+			TokenStreamRewriter rewriter = new TokenStreamRewriter(tokens);
+			step.accept(ParsedSourceCache.parseCompilationUnit(tokens), rewriter);
+			stepped = rewriter.getText();
+		}
+
+		CommonTokenStream tokens = lex(source);
+		JavaParser.CompilationUnitContext tree = ParsedSourceCache.parseCompilationUnit(tokens);
+		FusedRewriter fused = new FusedRewriter(tokens);
+		for (var step : steps) {
+			FusedRewriter.Step rewriter = fused.newStep();
+			step.accept(tree, rewriter);
+			fused.apply(rewriter);
+		}
+
+		Assertions.assertEquals(stepped, fused.getText());
+	}
+
+	@Test
+	void testRejectEditOfReplacedTokens() {
+		CommonTokenStream tokens = lex(source);
+		JavaParser.CompilationUnitContext tree = ParsedSourceCache.parseCompilationUnit(tokens);
+		var method = tree.typeDeclaration(0).classDeclaration().classBody().classBodyDeclaration(1);
+		FusedRewriter fused = new FusedRewriter(tokens);
+
+		FusedRewriter.Step first = fused.newStep();
+		first.replace(method.start, method.stop, "");
+		fused.apply(first);
+
+		FusedRewriter.Step second = fused.newStep();
+		second.insertAfter(method.stop, "\n");
+		Assertions.assertThrows(IllegalStateException.class, () -> fused.apply(second));
+	}
+}
@@ -0,0 +1,46 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rm2hyperledger.LineEndings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LineEndingsTest {
+	private static final String mixed = "a\r\nb\nc\rd\r\r\n\n\u00e9\r";
+
+	@Test
+	void testSameAsRegex() {
+		for (String separator : new String[]{"\n", "\r\n", "\r"}) {
+			String expected = mixed.replaceAll("((?<!\\r)\\n|\\r(?!\\n))", separator);
+			Assertions.assertEquals(expected, LineEndings.normalize(mixed, separator));
+
+			ByteBuffer bytes = ByteBuffer.wrap(mixed.getBytes(StandardCharsets.UTF_8));
+			ByteBuffer converted = LineEndings.normalize(bytes, separator);
+			Assertions.assertEquals(expected, StandardCharsets.UTF_8.decode(converted).toString());
+		}
+	}
+
+	@Test
+	void testReturnSameInstanceIfUnchanged() {
+		String text = "a\r\nb\r\nc\n";
+		Assertions.assertSame(text, LineEndings.normalize(text, "\n"));
+
+		ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+		Assertions.assertSame(bytes, LineEndings.normalize(bytes, "\n"));
+	}
+
+	@Test
+	void testDetect(@TempDir Path folder) throws IOException {
+		Path file = folder.resolve("A.java");
+		Files.writeString(file, "a\nb\rc\r\n");
+		Assertions.assertEquals("\r\n", LineEndings.detect(file));
+		Files.writeString(file, "a\rb\n");
+		Assertions.assertEquals("\n", LineEndings.detect(file));
+		Files.writeString(file, "a");
+		Assertions.assertEquals(System.lineSeparator(), LineEndings.detect(file));
+	}
+}
@@ -0,0 +1,48 @@
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import rm2hyperledger.FileHelper;
+import rm2hyperledger.JavaLexer;
+import rm2hyperledger.ParsedSource;
+import rm2hyperledger.ParsedSourceCache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ParsedSourceCacheTest {
+
+	@Test
+	void testReuseUntilContentChanges() throws IOException {
+		Path file = Files.createTempFile("ParsedSourceCacheTest", ".java");
+		try {
+			Files.writeString(file, "public class A { }");
+
+			ParsedSource first = ParsedSourceCache.parse(file);
+			Assertions.assertSame(first, ParsedSourceCache.parse(file));
+
+			FileHelper.writeSource(file, "public class B { }");
+			ParsedSource second = ParsedSourceCache.parse(file);
+			Assertions.assertNotSame(first, second);
+			Assertions.assertEquals("B", second.getCompilationUnit().typeDeclaration(0).classDeclaration().IDENTIFIER().getText());
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testFallBackToLLOnlyOnErrors() {
+		long fallbacks = ParsedSourceCache.getFallbacks();
+		var tree = ParsedSourceCache.parseCompilationUnit(new CommonTokenStream(new JavaLexer(CharStreams.fromString(
+				"public class A { List<Map<String, Integer>> m() { return x < y ? a : (b) -c; } }"))));
+		Assertions.assertEquals(fallbacks, ParsedSourceCache.getFallbacks());
+		Assertions.assertEquals("A", tree.typeDeclaration(0).classDeclaration().IDENTIFIER().getText());
+
+		tree = ParsedSourceCache.parseCompilationUnit(new CommonTokenStream(new JavaLexer(CharStreams.fromString(
+				"public class B { int x = ; }"))));
+		Assertions.assertEquals(fallbacks + 1, ParsedSourceCache.getFallbacks());
+		Assertions.assertEquals("B", tree.typeDeclaration(0).classDeclaration().IDENTIFIER().getText());
+	}
+}
@@ -0,0 +1,74 @@
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import rm2hyperledger.JavaLexer;
+import rm2hyperledger.JavaParser;
+import rm2hyperledger.checkers.ReadOnlyMethodChecker;
+
+public class ReadOnlyMethodCheckerTest {
+
+	private static boolean isReadOnly(String method) {
+		var tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromString("public class BookManagementImpl {" + method + "}")));
+		var parser = new JavaParser(tokens);
+		var p = parser.compilationUnit();
+
+		var methodDeclaration = p.typeDeclaration(0).classDeclaration().classBody().classBodyDeclaration(0).memberDeclaration().methodDeclaration();
+		return ReadOnlyMethodChecker.isReadOnly(methodDeclaration);
+	}
+
+	@Test
+	void testQuery() {
+		Assertions.assertTrue(isReadOnly("public List<Book> listBooks(int bookID) {" +
+				"List<Book> result = new LinkedList<>();" +
+				"for (Book b : (List<Book>) EntityManager.getAllInstancesOf(Book.class)) {" +
+				"if (b.getBookID() == bookID) result.add(b);" +
+				"}" +
+				"for (int i = 0; i < result.size(); i++) bookID += i;" +
+				"refresh(); return result;" +
+				"}"));
+	}
+
+	@Test
+	void testMutations() {
+		Assertions.assertFalse(isReadOnly("public boolean createBook(int bookID) {" +
+				"Book book = EntityManager.createObject(\"Book\");" +
+				"EntityManager.addBookObject(book);" +
+				"return true;" +
+				"}"));
+		Assertions.assertFalse(isReadOnly("public boolean renameBook(String title) {" +
+				"Book book = getCurrentBook();" +
+				"book.setTitle(title);" +
+				"return true;" +
+				"}"));
+		Assertions.assertFalse(isReadOnly("public boolean login(User user) {" +
+				"CurrentUser = user;" +
+				"return true;" +
+				"}"));
+		Assertions.assertFalse(isReadOnly("public boolean login(User user) {" +
+				"setCurrentUser(user);" +
+				"return true;" +
+				"}"));
+		Assertions.assertFalse(isReadOnly("public boolean countBooks() {" +
+				"this.count++;" +
+				"return true;" +
+				"}"));
+	}
+
+	@Test
+	void testCallsOnOtherObjects() {
+		Assertions.assertFalse(isReadOnly("public boolean payBook(int bookID) {" +
+				"Book book = EntityManager.getBookByPK(bookID);" +
+				"book.makePayment();" +
+				"return true;" +
+				"}"));
+		Assertions.assertFalse(isReadOnly("public boolean endSale() {" +
+				"otherService.endSale();" +
+				"return true;" +
+				"}"));
+		Assertions.assertTrue(isReadOnly("public boolean isAvailable(int bookID) {" +
+				"Book book = EntityManager.getBookByPK(bookID);" +
+				"return StandardOPs.oclIsundefined(book) == false && book.isAvailable() && book.getTitle().isEmpty() == false;" +
+				"}"));
+	}
+}
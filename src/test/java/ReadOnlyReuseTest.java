@@ -0,0 +1,262 @@
+import com.owlike.genson.Genson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rm2hyperledger.GeneratorOptions;
+import rm2hyperledger.Program;
+import rm2hyperledger.SyntheticProject;
+
+import javax.tools.ToolProvider;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reused instances keep the instances of other types they refer to, so a read-only transaction reuses the lists of
+ * the last one only if the states of all of them are unchanged.
+ * <p>
+ * The generated EntityManager runs in two peers, each with its own class loader, on one world state. One peer writes
+ * and the other evaluates read-only transactions, so the reader doesn't see the write in its own EntityManager.
+ */
+public class ReadOnlyReuseTest {
+
+	@Test
+	void testReloadAfterReferencedStateChanged(@TempDir Path folder) throws Exception {
+		for (GeneratorOptions.StorageLayout layout : GeneratorOptions.StorageLayout.values()) {
+			for (GeneratorOptions.StateFormat format : GeneratorOptions.StateFormat.values()) {
+				String options = layout + " " + format;
+				Path project = folder.resolve(layout + "_" + format);
+				Path classes = convertAndCompile(project, layout, format);
+
+				TreeMap<String, byte[]> worldState = new TreeMap<>();
+				try (var writer = new Peer(classes, worldState); var reader = new Peer(classes, worldState)) {
+					// Entity1 10 refers to Entity0 1.
+					writer.setStub(false);
+					Object owner = writer.newEntity("Entity0", 1, "a");
+					Object item = writer.newEntity("Entity1", 10, "x");
+					writer.call(item, "setOwner", owner);
+					writer.callEntityManager("addEntity0Object", owner);
+					writer.callEntityManager("addEntity1Object", item);
+					writer.callEntityManager("endTransaction");
+
+					reader.setStub(true);
+					List<?> items = reader.getAllInstancesOf("Entity1");
+					Assertions.assertEquals("a", reader.call(reader.call(items.get(0), "getOwner"), "getName"), options);
+					reader.callEntityManager("endTransaction");
+
+					reader.setStub(true);
+					Assertions.assertSame(items, reader.getAllInstancesOf("Entity1"), options);
+					reader.callEntityManager("endTransaction");
+
+					writer.setStub(false);
+					writer.call(writer.callEntityManager("getEntity0ByPK", 1), "setName", "b");
+					writer.callEntityManager("saveEntity0Modified");
+					writer.callEntityManager("endTransaction");
+
+					reader.setStub(true);
+					List<?> reloaded = reader.getAllInstancesOf("Entity1");
+					Assertions.assertNotSame(items, reloaded, options);
+					Assertions.assertEquals("b", reader.call(reader.call(reloaded.get(0), "getOwner"), "getName"), options);
+					reader.callEntityManager("endTransaction");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Convert a synthetic project and compile its entities and converters, with stubs of the Fabric classes they use.
+	 *
+	 * @return the folder of the classes
+	 */
+	private static Path convertAndCompile(Path project, GeneratorOptions.StorageLayout layout, GeneratorOptions.StateFormat format) throws Exception {
+		new SyntheticProject(3, 1, 1).write(project);
+		Program.main(new String[]{"--target", project.toString(), "--remodel", SyntheticProject.getReModelFile(project).toString(), "--vcs", "none",
+				"--storage", layout.name().toLowerCase().replace('_', '-'), "--state-format", format.name().toLowerCase()});
+
+		Path stubs = project.resolve("stubs");
+		writeSource(stubs, "org.hyperledger.fabric.shim.ChaincodeStub",
+				"package org.hyperledger.fabric.shim;",
+				"import org.hyperledger.fabric.shim.ledger.*;",
+				"public interface ChaincodeStub {",
+				"	byte[] getState(String key);",
+				"	void putState(String key, byte[] value);",
+				"	void delState(String key);",
+				"	String getStringState(String key);",
+				"	void putStringState(String key, String value);",
+				"	CompositeKey createCompositeKey(String objectType, String... attributes);",
+				"	QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey);",
+				"	java.time.Instant getTxTimestamp();",
+				"}");
+		writeSource(stubs, "org.hyperledger.fabric.shim.ledger.CompositeKey",
+				"package org.hyperledger.fabric.shim.ledger;",
+				"public class CompositeKey {",
+				"	private final String key;",
+				"	public CompositeKey(String objectType, String... attributes) {",
+				"		key = \"\\u0000\" + objectType + \"\\u0000\" + String.join(\"\", java.util.Arrays.stream(attributes).map(a -> a + \"\\u0000\").toArray(String[]::new));",
+				"	}",
+				"	public String toString() {",
+				"		return key;",
+				"	}",
+				"}");
+		writeSource(stubs, "org.hyperledger.fabric.shim.ledger.KeyValue",
+				"package org.hyperledger.fabric.shim.ledger;",
+				"public interface KeyValue {",
+				"	String getKey();",
+				"	byte[] getValue();",
+				"	String getStringValue();",
+				"}");
+		writeSource(stubs, "org.hyperledger.fabric.shim.ledger.QueryResultsIterator",
+				"package org.hyperledger.fabric.shim.ledger;",
+				"public interface QueryResultsIterator<T> extends Iterable<T>, AutoCloseable {",
+				"}");
+		writeSource(stubs, "org.hyperledger.fabric.contract.annotation.DataType",
+				"package org.hyperledger.fabric.contract.annotation;",
+				"public @interface DataType {",
+				"}");
+		writeSource(stubs, "org.hyperledger.fabric.contract.annotation.Property",
+				"package org.hyperledger.fabric.contract.annotation;",
+				"public @interface Property {",
+				"}");
+		writeSource(stubs, "MemoryStub",
+				"import org.hyperledger.fabric.shim.ChaincodeStub;",
+				"import org.hyperledger.fabric.shim.ledger.*;",
+				"import java.nio.charset.StandardCharsets;",
+				"import java.util.*;",
+				"public class MemoryStub implements ChaincodeStub {",
+				"	private final TreeMap<String, byte[]> state;",
+				"	public MemoryStub(TreeMap<String, byte[]> state) {",
+				"		this.state = state;",
+				"	}",
+				"	public byte[] getState(String key) {",
+				"		return state.get(key);",
+				"	}",
+				"	public void putState(String key, byte[] value) {",
+				"		state.put(key, value);",
+				"	}",
+				"	public void delState(String key) {",
+				"		state.remove(key);",
+				"	}",
+				"	public String getStringState(String key) {",
+				"		byte[] value = state.get(key);",
+				"		return value == null ? \"\" : new String(value, StandardCharsets.UTF_8);",
+				"	}",
+				"	public void putStringState(String key, String value) {",
+				"		state.put(key, value.getBytes(StandardCharsets.UTF_8));",
+				"	}",
+				"	public CompositeKey createCompositeKey(String objectType, String... attributes) {",
+				"		return new CompositeKey(objectType, attributes);",
+				"	}",
+				"	public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey) {",
+				"		List<KeyValue> results = new ArrayList<>();",
+				"		for (Map.Entry<String, byte[]> entry : state.subMap(compositeKey.toString(), compositeKey + \"\\uffff\").entrySet()) {",
+				"			results.add(new KeyValue() {",
+				"				public String getKey() {",
+				"					return entry.getKey();",
+				"				}",
+				"				public byte[] getValue() {",
+				"					return entry.getValue();",
+				"				}",
+				"				public String getStringValue() {",
+				"					return new String(entry.getValue(), StandardCharsets.UTF_8);",
+				"				}",
+				"			});",
+				"		}",
+				"		return new QueryResultsIterator<KeyValue>() {",
+				"			public Iterator<KeyValue> iterator() {",
+				"				return results.iterator();",
+				"			}",
+				"			public void close() {",
+				"			}",
+				"		};",
+				"	}",
+				"	public java.time.Instant getTxTimestamp() {",
+				"		return java.time.Instant.EPOCH;",
+				"	}",
+				"}");
+
+		Path java = project.resolve(Path.of("src", "main", "java"));
+		List<String> arguments = new ArrayList<>();
+		Path classes = Files.createDirectories(project.resolve("classes"));
+		String gensonJar = Path.of(Genson.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+		arguments.addAll(List.of("-nowarn", "-classpath", gensonJar, "-d", classes.toString()));
+		try (Stream<Path> files = Stream.of(stubs, java.resolve("entities"), java.resolve("converters")).flatMap(ReadOnlyReuseTest::walk)) {
+			arguments.addAll(files.filter(file -> file.toString().endsWith(".java")).map(Path::toString).collect(Collectors.toList()));
+		}
+		arguments.add(java.resolve(Path.of("services", "impl", "ServiceManager.java")).toString());
+		Assertions.assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, arguments.toArray(String[]::new)));
+		return classes;
+	}
+
+	private static void writeSource(Path folder, String className, String... lines) throws Exception {
+		Path file = folder.resolve(className.replace('.', '/') + ".java");
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, String.join("\n", lines) + "\n");
+	}
+
+	private static Stream<Path> walk(Path folder) {
+		try {
+			return Files.walk(folder);
+		}
+		catch (Exception exception) {
+			throw new RuntimeException(exception);
+		}
+	}
+
+	/**
+	 * The chaincode of a peer. Its classes, and so the static state of its EntityManager, are its own.
+	 */
+	private static class Peer implements AutoCloseable {
+		private final URLClassLoader loader;
+		private final Class<?> entityManager;
+		private final Object stub;
+
+		Peer(Path classes, TreeMap<String, byte[]> worldState) throws Exception {
+			loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, ReadOnlyReuseTest.class.getClassLoader());
+			entityManager = loader.loadClass("entities.EntityManager");
+			stub = loader.loadClass("MemoryStub").getConstructor(TreeMap.class).newInstance(worldState);
+		}
+
+		void setStub(boolean readOnly) throws Exception {
+			entityManager.getMethod("setStub", loader.loadClass("org.hyperledger.fabric.shim.ChaincodeStub"), boolean.class).invoke(null, stub, readOnly);
+		}
+
+		List<?> getAllInstancesOf(String entity) throws Exception {
+			return (List<?>) entityManager.getMethod("getAllInstancesOf", Class.class).invoke(null, loader.loadClass("entities." + entity));
+		}
+
+		Object newEntity(String entity, int id, String name) throws Exception {
+			Object o = loader.loadClass("entities." + entity).getConstructor().newInstance();
+			call(o, "set" + entity + "ID", id);
+			call(o, "setName", name);
+			return o;
+		}
+
+		Object callEntityManager(String name, Object... arguments) throws Exception {
+			return invoke(entityManager, null, name, arguments);
+		}
+
+		Object call(Object o, String name, Object... arguments) throws Exception {
+			return invoke(o.getClass(), o, name, arguments);
+		}
+
+		private static Object invoke(Class<?> c, Object o, String name, Object[] arguments) throws Exception {
+			for (Method method : c.getMethods()) {
+				if (method.getName().equals(name) && method.getParameterCount() == arguments.length)
+					return method.invoke(o, arguments);
+			}
+			throw new NoSuchMethodException(c.getName() + "." + name);
+		}
+
+		@Override
+		public void close() throws Exception {
+			loader.close();
+		}
+	}
+}
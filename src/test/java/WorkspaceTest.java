@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rm2hyperledger.FileHelper;
+import rm2hyperledger.Workspace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class WorkspaceTest {
+
+	@Test
+	void testWriteChangedFilesOnClose(@TempDir Path folder) throws IOException {
+		String separator = System.getProperty("line.separator");
+		Path changed = folder.resolve("A.java");
+		Path unchanged = folder.resolve("B.java");
+		Path created = folder.resolve("C.java");
+		Files.writeString(changed, "class A {}");
+		Files.writeString(unchanged, "class B {}" + separator);
+
+		Workspace workspace = Workspace.open(folder);
+		try {
+			Assertions.assertEquals("class A {}", FileHelper.readSource(changed));
+			FileHelper.writeSource(changed, "class A {\n}\r");
+			Assertions.assertEquals("class A {\n}\r", FileHelper.readSource(changed));
+			Assertions.assertEquals("class A {}", Files.readString(changed));
+
+			FileHelper.readSource(unchanged);
+			Files.writeString(unchanged, "class B2 {}");
+
+			// Written at once, so that the folder lists it.
+			FileHelper.writeSource(created, "class C {} // \u00e9");
+			Assertions.assertEquals("class C {} // \u00e9", Files.readString(created));
+		}
+		finally {
+			workspace.close();
+		}
+
+		Assertions.assertEquals("class A {" + separator + "}" + separator, Files.readString(changed));
+		Assertions.assertEquals("class B2 {}", Files.readString(unchanged));
+	}
+}
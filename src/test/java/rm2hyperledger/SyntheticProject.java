@@ -0,0 +1,374 @@
+package rm2hyperledger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes an RM2PT-style project of a given size, for tests and benchmarks that must not depend on a real project.
+ * <p>
+ * Entity i has a primary key, two primary attributes, a reference to entity i - 1 and a list of entity i + 1. The
+ * first service is the system service. Service methods create, query, list and update the entities in turn.
+ */
+public class SyntheticProject {
+	public static final String MODEL_NAME = "Synthetic";
+
+	private final int entities;
+	private final int services;
+	private final int methodsPerService;
+
+	public SyntheticProject(int entities, int services, int methodsPerService) {
+		if (entities < 1 || services < 1 || methodsPerService < 1)
+			throw new IllegalArgumentException("A project needs at least one entity, service and method.");
+		this.entities = entities;
+		this.services = services;
+		this.methodsPerService = methodsPerService;
+	}
+
+	public static Path getReModelFile(Path folder) {
+		return folder.resolve(MODEL_NAME + ".remodel");
+	}
+
+	public static String getEntityName(int i) {
+		return "Entity" + i;
+	}
+
+	public static String getServiceName(int j) {
+		return j == 0 ? MODEL_NAME + "System" : "Service" + j;
+	}
+
+	/**
+	 * Write the project into the folder, which is created if necessary.
+	 */
+	public void write(Path folder) throws IOException {
+		Path entitiesFolder = folder.resolve(Path.of("src", "main", "java", "entities"));
+		Path servicesFolder = folder.resolve(Path.of("src", "main", "java", "services"));
+		Path implFolder = servicesFolder.resolve("impl");
+		Files.createDirectories(entitiesFolder);
+		Files.createDirectories(implFolder);
+
+		for (int i = 0; i < entities; i++)
+			Files.writeString(entitiesFolder.resolve(getEntityName(i) + ".java"), getEntity(i));
+		Files.writeString(entitiesFolder.resolve("EntityManager.java"), getEntityManager());
+
+		for (int j = 0; j < services; j++) {
+			Files.writeString(servicesFolder.resolve(getServiceName(j) + ".java"), getService(j));
+			Files.writeString(implFolder.resolve(getServiceName(j) + "Impl.java"), getServiceImpl(j));
+		}
+		Files.writeString(implFolder.resolve("ServiceManager.java"), String.join("\n",
+				"package services.impl;",
+				"",
+				"import java.util.*;",
+				"",
+				"public class ServiceManager {",
+				"	private static Map<String, List> AllServiceInstance = new HashMap<String, List>();",
+				"",
+				"	public static List getAllInstancesOf(String ClassName) {",
+				"		return AllServiceInstance.get(ClassName);",
+				"	}",
+				"}",
+				""));
+
+		Files.writeString(getReModelFile(folder), getReModel());
+	}
+
+	private String getEntity(int i) {
+		String name = getEntityName(i);
+		StringBuilder s = new StringBuilder();
+		s.append(String.join("\n",
+				"package entities;",
+				"",
+				"import services.impl.*;",
+				"import java.time.LocalDate;",
+				"import java.util.*;",
+				"import java.io.Serializable;",
+				"",
+				"public class " + name + " implements Serializable {",
+				"",
+				"	/* all primary attributes */",
+				"	private int " + name + "ID;",
+				"	private String Name;",
+				"	private LocalDate Date;",
+				"",
+				"	/* all references */",
+				""));
+		if (i > 0)
+			s.append(String.format("\tprivate %s Owner;\n", getEntityName(i - 1)));
+		if (i + 1 < entities)
+			s.append(String.format("\tprivate List<%1$s> Items = new LinkedList<%1$s>();\n", getEntityName(i + 1)));
+
+		s.append("\n\t/* all get and set functions */\n");
+		s.append(getProperty("int", name + "ID"));
+		s.append(getProperty("String", "Name"));
+		s.append(getProperty("LocalDate", "Date"));
+
+		s.append("\t/* all functions for reference*/\n");
+		if (i > 0)
+			s.append(getProperty(getEntityName(i - 1), "Owner"));
+		if (i + 1 < entities) {
+			s.append(String.format(String.join("\n",
+					"	public List<%1$s> getItems() {",
+					"		return Items;",
+					"	}",
+					"",
+					"	public void addItems(%1$s %2$s) {",
+					"		this.Items.add(%2$s);",
+					"	}",
+					"",
+					"	public void deleteItems(%1$s %2$s) {",
+					"		this.Items.remove(%2$s);",
+					"	}",
+					"",
+					""), getEntityName(i + 1), StringHelper.lowercaseFirstLetter(getEntityName(i + 1))));
+		}
+		s.append("}\n");
+		return s.toString();
+	}
+
+	private static String getProperty(String type, String name) {
+		String parameter = name.toLowerCase();
+		return String.format(String.join("\n",
+				"	public %1$s get%2$s() {",
+				"		return %2$s;",
+				"	}",
+				"",
+				"	public void set%2$s(%1$s %3$s) {",
+				"		this.%2$s = %3$s;",
+				"	}",
+				"",
+				""), type, name, parameter);
+	}
+
+	private String getEntityManager() {
+		StringBuilder s = new StringBuilder();
+		s.append(String.join("\n",
+				"package entities;",
+				"",
+				"import java.util.List;",
+				"import java.util.Map;",
+				"import java.util.HashMap;",
+				"import java.util.LinkedList;",
+				"import java.lang.reflect.Method;",
+				"",
+				"public class EntityManager {",
+				"",
+				"	private static Map<String, List> AllInstance = new HashMap<String, List>();",
+				"",
+				""));
+		for (int i = 0; i < entities; i++)
+			s.append(String.format("\tprivate static List<%1$s> %1$sInstances = new LinkedList<%1$s>();\n", getEntityName(i)));
+
+		s.append("\n\tstatic {\n");
+		for (int i = 0; i < entities; i++)
+			s.append(String.format("\t\tAllInstance.put(\"%1$s\", %1$sInstances);\n", getEntityName(i)));
+		s.append("\t}\n\n");
+
+		s.append(String.join("\n",
+				"	public static List getAllInstancesOf(String ClassName) {",
+				"		return AllInstance.get(ClassName);",
+				"	}",
+				"",
+				"	public static Object createObject(String Classifer) {",
+				"		try {",
+				"			Class c = Class.forName(\"entities.\" + Classifer);",
+				"			return c.newInstance();",
+				"		} catch (Exception e) {",
+				"			return null;",
+				"		}",
+				"	}",
+				"",
+				"	public static Object addObject(String Classifer, Object ob) {",
+				"		try {",
+				"			Method m = EntityManager.class.getMethod(\"add\" + Classifer + \"Object\", Class.forName(\"entities.\" + Classifer));",
+				"			return m.invoke(null, ob);",
+				"		} catch (Exception e) {",
+				"			return null;",
+				"		}",
+				"	}",
+				"",
+				"	public static Object deleteObject(String Classifer, Object ob) {",
+				"		try {",
+				"			Method m = EntityManager.class.getMethod(\"delete\" + Classifer + \"Object\", Class.forName(\"entities.\" + Classifer));",
+				"			return m.invoke(null, ob);",
+				"		} catch (Exception e) {",
+				"			return null;",
+				"		}",
+				"	}",
+				"",
+				""));
+		for (int i = 0; i < entities; i++) {
+			s.append(String.format(String.join("\n",
+					"	public static boolean add%1$sObject(%1$s o) {",
+					"		return %1$sInstances.add(o);",
+					"	}",
+					"",
+					"	public static boolean delete%1$sObject(%1$s o) {",
+					"		return %1$sInstances.remove(o);",
+					"	}",
+					"",
+					""), getEntityName(i)));
+		}
+		s.append("}\n");
+		return s.toString();
+	}
+
+	/**
+	 * @return the entity and the kind of the k-th method of the j-th service.
+	 */
+	private String[] getMethod(int j, int k) {
+		String entity = getEntityName((j * methodsPerService + k) % entities);
+		String[] kinds = {"create", "query", "list", "update"};
+		return new String[]{entity, kinds[k % kinds.length]};
+	}
+
+	private String getSignature(int j, int k) {
+		String[] method = getMethod(j, k);
+		String entity = method[0];
+		String exceptions = " throws PreconditionException, PostconditionException, ThirdPartyServiceException";
+		switch (method[1]) {
+			case "create":
+				return String.format("public boolean create%s%d(int id, String name)", entity, k) + exceptions;
+			case "query":
+				return String.format("public %1$s query%1$s%2$d(int id)", entity, k) + exceptions;
+			case "list":
+				return String.format("public List<%1$s> list%1$s%2$d()", entity, k) + exceptions;
+			default:
+				return String.format("public boolean update%s%d(int id, String name, LocalDate date)", entity, k) + exceptions;
+		}
+	}
+
+	private String getService(int j) {
+		StringBuilder s = new StringBuilder();
+		s.append(String.join("\n",
+				"package services;",
+				"",
+				"import entities.*;",
+				"import java.util.List;",
+				"import java.time.LocalDate;",
+				"",
+				"public interface " + getServiceName(j) + " {",
+				"",
+				""));
+		if (j == 0) {
+			s.append(String.format("\tpublic %1$s getCurrent%1$s();\n\n", getEntityName(0)));
+			s.append(String.format("\tpublic void setCurrent%1$s(%1$s current%2$s);\n\n", getEntityName(0), getEntityName(0).toLowerCase()));
+		}
+		for (int k = 0; k < methodsPerService; k++)
+			s.append("\t").append(getSignature(j, k)).append(";\n\n");
+		s.append("}\n");
+		return s.toString();
+	}
+
+	private String getServiceImpl(int j) {
+		String name = getServiceName(j);
+		StringBuilder s = new StringBuilder();
+		s.append(String.join("\n",
+				"package services.impl;",
+				"",
+				"import services.*;",
+				"import entities.*;",
+				"import java.util.List;",
+				"import java.util.LinkedList;",
+				"import java.time.LocalDate;",
+				"import java.util.Arrays;",
+				"import java.util.Map;",
+				"import java.util.HashMap;",
+				"",
+				"public class " + name + "Impl implements " + name + " {",
+				"",
+				"	public static Map<String, List<String>> opINVRelatedEntity = new HashMap<String, List<String>>();",
+				"",
+				""));
+		if (j == 0) {
+			s.append("\t/* Shared variable from system services */\n");
+			s.append(String.format("\tprivate %s Current%s;\n\n", getEntityName(0), getEntityName(0)));
+			s.append(getProperty(getEntityName(0), "Current" + getEntityName(0)));
+		}
+
+		for (int k = 0; k < methodsPerService; k++) {
+			String[] method = getMethod(j, k);
+			s.append("\t").append(getSignature(j, k)).append(" {\n");
+			s.append(String.format(getBody(method[1]), method[0], StringHelper.lowercaseFirstLetter(method[0])));
+			s.append("\t}\n\n");
+		}
+
+		s.append("\tpublic void refresh() {\n");
+		if (j > 0)
+			s.append(String.format("\t\t%1$s %2$s_service = (%1$s) ServiceManager.getAllInstancesOf(\"%1$s\").get(0);\n", getServiceName(0), getServiceName(0).toLowerCase()));
+		s.append("\t}\n");
+		s.append("}\n");
+		return s.toString();
+	}
+
+	/**
+	 * @return the body of a method, formatted with the entity name and the variable name
+	 */
+	private static String getBody(String kind) {
+		String find = String.join("\n",
+				"		%1$s %2$s = null;",
+				"		for (%1$s o : (List<%1$s>) EntityManager.getAllInstancesOf(\"%1$s\")) {",
+				"			if (o.get%1$sID() == id) {",
+				"				%2$s = o;",
+				"			}",
+				"		}",
+				"");
+		switch (kind) {
+			case "create":
+				return find + String.join("\n",
+						"		if (StandardOPs.oclIsundefined(%2$s) == true) {",
+						"			%1$s o = null;",
+						"			o = (%1$s) EntityManager.createObject(\"%1$s\");",
+						"			o.set%1$sID(id);",
+						"			o.setName(name);",
+						"			EntityManager.addObject(\"%1$s\", o);",
+						"			refresh();",
+						"			if (!(true && o.get%1$sID() == id && StandardOPs.includes(((List<%1$s>) EntityManager.getAllInstancesOf(\"%1$s\")), o) && true)) {",
+						"				throw new PostconditionException();",
+						"			}",
+						"			refresh(); return true;",
+						"		} else {",
+						"			throw new PreconditionException();",
+						"		}",
+						"");
+			case "query":
+				return find + String.join("\n",
+						"		if (StandardOPs.oclIsundefined(%2$s) == false) {",
+						"			refresh(); return %2$s;",
+						"		} else {",
+						"			throw new PreconditionException();",
+						"		}",
+						"");
+			case "list":
+				return String.join("\n",
+						"		List<%1$s> all = (List<%1$s>) EntityManager.getAllInstancesOf(\"%1$s\");",
+						"		refresh(); return all;",
+						"");
+			default:
+				return find + String.join("\n",
+						"		if (StandardOPs.oclIsundefined(%2$s) == false) {",
+						"			%2$s.setName(name);",
+						"			%2$s.setDate(date);",
+						"			refresh();",
+						"			if (!(true && %2$s.getName() == name && true)) {",
+						"				throw new PostconditionException();",
+						"			}",
+						"			refresh(); return true;",
+						"		} else {",
+						"			throw new PreconditionException();",
+						"		}",
+						"");
+		}
+	}
+
+	private String getReModel() {
+		StringBuilder s = new StringBuilder();
+		s.append("UseCaseModel ").append(MODEL_NAME).append(" {}\n");
+		s.append("DomainModel ").append(MODEL_NAME).append(" {\n");
+		for (int i = 0; i < entities; i++) {
+			String name = getEntityName(i);
+			s.append(String.format("\t%1$s.allInstance()->isUnique(o:%1$s | o.%1$sID)\n", name));
+		}
+		s.append("}\n");
+		return s.toString();
+	}
+}